@@ -0,0 +1,117 @@
+package de.m3y.mobi.benchmarks;
+
+import de.m3y.mobi.core.MobiHeader;
+import de.m3y.mobi.core.PalmDatabase;
+import de.m3y.mobi.core.ParseOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading MOBI header, PDB header and EXTH header, from stream and from buffer.
+ * <p>
+ * The file is either the test fixture or a synthetic file, see {@link #file}.
+ * The fixture location can be overridden by system property {@value #FIXTURE_PROPERTY}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MobiHeaderBenchmark {
+    static final String FIXTURE_PROPERTY = "libmobi.fixture";
+    private static final String FIXTURE = "core/src/test/resources/progit-en.984.mobi";
+
+    /**
+     * The MOBI file: the test fixture, or synthetic files with many PDB records or many EXTH records.
+     */
+    @Param({"fixture", "records-30000", "exth-2000"})
+    public String file;
+
+    private byte[] data;
+    private ByteBuffer buffer;
+    private int exthOffset;
+    private MobiHeader header;
+    private ParseOptions lazyExth;
+    private ParseOptions selective;
+    private ParseOptions compactRecords;
+
+    @Setup
+    public void setup() throws IOException {
+        if ("fixture".equals(file)) {
+            data = Files.readAllBytes(Paths.get(System.getProperty(FIXTURE_PROPERTY, FIXTURE)));
+        } else if (file.startsWith("records-")) {
+            data = SyntheticMobi.create(Integer.parseInt(file.substring("records-".length())), 18);
+        } else if (file.startsWith("exth-")) {
+            data = SyntheticMobi.create(100, Integer.parseInt(file.substring("exth-".length())));
+        } else {
+            throw new IllegalArgumentException("Unknown file " + file);
+        }
+        buffer = ByteBuffer.wrap(data);
+        header = MobiHeader.read(buffer);
+        exthOffset = PalmDatabase.Header.getLength(header.palmDatabaseHeader.numRecords) + 16 + header.headerLength;
+
+        lazyExth = new ParseOptions().lazyExth(true);
+        selective = new ParseOptions().skipRecords(true).exthRecordTypes(
+                MobiHeader.Exth.RecordType.AUTHOR, MobiHeader.Exth.RecordType.ASIN);
+        compactRecords = new ParseOptions().compactRecords(true);
+    }
+
+    private DataInputStream stream() {
+        return new DataInputStream(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public MobiHeader readMobiHeaderFromStream() throws IOException {
+        return MobiHeader.read(stream());
+    }
+
+    @Benchmark
+    public MobiHeader readMobiHeaderFromBuffer() {
+        return MobiHeader.read(buffer);
+    }
+
+    @Benchmark
+    public MobiHeader readMobiHeaderLazyExth() {
+        return MobiHeader.read(buffer, lazyExth);
+    }
+
+    @Benchmark
+    public MobiHeader readMobiHeaderSelective() {
+        return MobiHeader.read(buffer, selective);
+    }
+
+    @Benchmark
+    public PalmDatabase.Header readPalmDatabaseHeaderFromStream() throws IOException {
+        return PalmDatabase.Header.read(stream());
+    }
+
+    @Benchmark
+    public PalmDatabase.Header readPalmDatabaseHeaderFromBuffer() {
+        return PalmDatabase.Header.read(buffer);
+    }
+
+    @Benchmark
+    public PalmDatabase.Header readPalmDatabaseHeaderCompact() {
+        return PalmDatabase.Header.read(buffer, compactRecords);
+    }
+
+    @Benchmark
+    public MobiHeader.Exth.Header readExthFromStream() throws IOException {
+        final DataInputStream is = stream();
+        is.skipBytes(exthOffset);
+        return MobiHeader.Exth.Header.read(is, header.encoding);
+    }
+
+    @Benchmark
+    public MobiHeader.Exth.Header readExthFromBuffer() {
+        return MobiHeader.Exth.Header.read(buffer, exthOffset, header.encoding);
+    }
+}
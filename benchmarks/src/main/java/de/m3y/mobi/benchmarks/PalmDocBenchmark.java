@@ -0,0 +1,49 @@
+package de.m3y.mobi.benchmarks;
+
+import de.m3y.mobi.core.PalmDoc;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks compressing and decompressing a PalmDOC text record.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PalmDocBenchmark {
+    private static final int RECORD_SIZE = 4096;
+
+    private final PalmDoc.Compressor compressor = new PalmDoc.Compressor();
+    private byte[] record;
+    private byte[] compressed;
+    private int compressedLength;
+    private byte[] out;
+
+    @Setup
+    public void setup() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < RECORD_SIZE; i++) {
+            text.append("<p>Chapter ").append(i).append(": Git stores snapshots, not differences. </p>\n");
+        }
+        record = text.substring(0, RECORD_SIZE).getBytes(StandardCharsets.UTF_8);
+        compressed = new byte[PalmDoc.maxCompressedLength(record.length)];
+        compressedLength = compressor.compress(record, 0, record.length, compressed, 0);
+        out = new byte[RECORD_SIZE];
+    }
+
+    @Benchmark
+    public int compress() {
+        return compressor.compress(record, 0, record.length, compressed, 0);
+    }
+
+    @Benchmark
+    public int decompress() {
+        return PalmDoc.decompress(ByteBuffer.wrap(compressed), 0, compressedLength, out, 0, RECORD_SIZE);
+    }
+}
@@ -0,0 +1,52 @@
+package de.m3y.mobi.benchmarks;
+
+import de.m3y.mobi.core.StreamHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading strings from stream, e.g. the PDB name or EXTH record data.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StreamHelperBenchmark {
+    /**
+     * The string length in bytes.
+     */
+    @Param({"4", "32", "256"})
+    public int length;
+
+    private ByteArrayInputStream bytes;
+    private DataInputStream is;
+
+    @Setup
+    public void setup() {
+        final byte[] data = new byte[length];
+        Arrays.fill(data, (byte) 'a');
+        data[data.length - 1] = 0;
+        bytes = new ByteArrayInputStream(data);
+        is = new DataInputStream(bytes);
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        bytes.reset();
+        return StreamHelper.readString(is, length, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String readStringTillNull() throws IOException {
+        bytes.reset();
+        return StreamHelper.readStringTillNull(is, length, StandardCharsets.ISO_8859_1);
+    }
+}
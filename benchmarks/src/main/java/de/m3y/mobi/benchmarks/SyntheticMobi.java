@@ -0,0 +1,89 @@
+package de.m3y.mobi.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Creates synthetic MOBI files with many PDB records and EXTH entries.
+ * <p>
+ * Only the headers are valid, the records following record 0 contain no data.
+ */
+final class SyntheticMobi {
+    private static final int MOBI_HEADER_LENGTH = 0xE8;
+    private static final int RECORD_LENGTH = 16;
+    private static final int[] EXTH_TYPES = {100, 101, 103, 104, 105, 106, 108, 503, 524};
+
+    private SyntheticMobi() {
+        // Not instantiable
+    }
+
+    /**
+     * Creates a MOBI file.
+     *
+     * @param numRecords  the number of PDB records, at most 32767.
+     * @param exthRecords the number of EXTH records.
+     * @return the file content.
+     */
+    static byte[] create(int numRecords, int exthRecords) {
+        final byte[][] exthData = new byte[exthRecords][];
+        int exthLength = 12;
+        for (int i = 0; i < exthRecords; i++) {
+            exthData[i] = ("value-" + i).getBytes(StandardCharsets.UTF_8);
+            exthLength += 8 + exthData[i].length;
+        }
+        final byte[] fullName = "Synthetic".getBytes(StandardCharsets.UTF_8);
+        final int pdbLength = 78 + numRecords * 8 + 2;
+        final int exthPadding = 4 - exthLength % 4;
+        final int fullNameOffset = 16 + MOBI_HEADER_LENGTH + exthLength + exthPadding;
+        final int record0Length = fullNameOffset + fullName.length + 2;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(pdbLength + record0Length + (numRecords - 1) * RECORD_LENGTH);
+        // PDB header
+        buffer.put(new byte[]{'S', 'y', 'n', 't', 'h', 'e', 't', 'i', 'c'});
+        buffer.position(60);
+        buffer.put("BOOKMOBI".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(68, numRecords * 2 - 1);
+        buffer.putShort(76, (short) numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            final int offset = i == 0 ? pdbLength : pdbLength + record0Length + (i - 1) * RECORD_LENGTH;
+            buffer.putInt(78 + i * 8, offset);
+            buffer.putInt(78 + i * 8 + 4, i * 2);
+        }
+
+        // PalmDOC header
+        final int record0 = pdbLength;
+        buffer.putShort(record0, (short) 2);
+        buffer.putShort(record0 + 8, (short) (numRecords - 1));
+        buffer.putShort(record0 + 10, (short) 4096);
+
+        // MOBI header
+        final int mobi = record0 + 16;
+        buffer.position(mobi);
+        buffer.put("MOBI".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(mobi + 4, MOBI_HEADER_LENGTH);
+        buffer.putInt(mobi + 8, 2);
+        buffer.putInt(mobi + 12, 65001);
+        buffer.putInt(mobi + 20, 6);
+        for (int i = 24; i < 64; i += 4) {
+            buffer.putInt(mobi + i, -1);
+        }
+        buffer.putInt(mobi + 64, numRecords);
+        buffer.putInt(mobi + 68, fullNameOffset);
+        buffer.putInt(mobi + 72, fullName.length);
+        buffer.putInt(mobi + 88, 6);
+        buffer.putInt(mobi + 92, numRecords);
+        buffer.putInt(mobi + 112, 0x50);
+
+        // EXTH
+        final int exth = mobi + MOBI_HEADER_LENGTH;
+        buffer.position(exth);
+        buffer.put("EXTH".getBytes(StandardCharsets.US_ASCII)).putInt(exthLength).putInt(exthRecords);
+        for (int i = 0; i < exthRecords; i++) {
+            buffer.putInt(EXTH_TYPES[i % EXTH_TYPES.length]).putInt(8 + exthData[i].length).put(exthData[i]);
+        }
+
+        buffer.position(record0 + fullNameOffset);
+        buffer.put(fullName);
+        return buffer.array();
+    }
+}
@@ -0,0 +1,155 @@
+package de.m3y.mobi.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads a MOBI header using an asynchronous file channel, without blocking a thread while waiting for I/O.
+ * <p>
+ * Reads the file prefix containing the PDB header, the record entries and record 0 up to the end of the EXTH header.
+ * The first read covers the PDB header plus some read ahead, following reads get sized from the number of records
+ * and the MOBI and EXTH header lengths. Usually, two reads suffice.
+ * <p>
+ * Before growing the buffer, the MOBI header length gets checked against the fixed header bounds and the EXTH length
+ * against {@link ParseOptions#getMaxExthLength()}, so corrupt lengths can not cause large allocations.
+ *
+ * @see MobiHeader#readAsync(Path, ParseOptions)
+ */
+final class AsyncMobiHeaderReader implements CompletionHandler<Integer, Void> {
+    private static final int READ_AHEAD = 4096;
+    private static final int EXTH_HEADER_LENGTH = 12;
+
+    private final AsynchronousFileChannel channel;
+    private final long size;
+    private final ParseOptions options;
+    private final CompletableFuture<MobiHeader> future = new CompletableFuture<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private boolean exact;
+
+    private AsyncMobiHeaderReader(AsynchronousFileChannel channel, long size, ParseOptions options) {
+        this.channel = channel;
+        this.size = size;
+        this.options = options;
+    }
+
+    static CompletableFuture<MobiHeader> read(Path path, ParseOptions options) {
+        AsynchronousFileChannel channel = null;
+        try {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            final AsyncMobiHeaderReader reader = new AsyncMobiHeaderReader(channel, channel.size(), options);
+            reader.fill(PalmDatabase.Header.LENGTH + READ_AHEAD);
+            return reader.future;
+        } catch (IOException | RuntimeException ex) {
+            closeQuietly(channel);
+            final CompletableFuture<MobiHeader> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    /**
+     * Reads the file prefix of given length, continuing after the bytes already read.
+     */
+    private void fill(long length) {
+        final int limit = (int) Math.min(length, Math.min(size, Integer.MAX_VALUE));
+        if (buffer.capacity() < limit) {
+            final ByteBuffer grown = ByteBuffer.allocate(limit);
+            ((Buffer) buffer).flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        ((Buffer) buffer).limit(limit);
+        channel.read(buffer, buffer.position(), null, this);
+    }
+
+    @Override
+    public void completed(Integer n, Void attachment) {
+        try {
+            if (n < 0) {
+                throw new EOFException("Unexpected end of file at " + buffer.position());
+            }
+            if (buffer.hasRemaining()) {
+                channel.read(buffer, buffer.position(), null, this);
+                return;
+            }
+            final long required = getRequiredLength();
+            if (required > buffer.position()) {
+                if (required > size) {
+                    throw new IllegalStateException("File of " + size + " bytes ends within header of "
+                            + required + " bytes");
+                }
+                fill(exact ? required : required + READ_AHEAD);
+                return;
+            }
+            ((Buffer) buffer).flip();
+            final MobiHeader header = MobiHeader.read(buffer, (int) Math.min(size, Integer.MAX_VALUE), options);
+            closeQuietly(channel);
+            future.complete(header);
+        } catch (Exception ex) {
+            failed(ex, attachment);
+        }
+    }
+
+    @Override
+    public void failed(Throwable ex, Void attachment) {
+        closeQuietly(channel);
+        future.completeExceptionally(ex);
+    }
+
+    /**
+     * Computes the prefix length required for parsing, from the data read so far.
+     *
+     * @throws MobiFormatException if a header length is out of bounds.
+     */
+    private long getRequiredLength() {
+        final int available = buffer.position();
+        exact = false;
+        if (available < PalmDatabase.Header.LENGTH) {
+            return PalmDatabase.Header.LENGTH;
+        }
+        final int record0 = PalmDatabase.Header.getLength(buffer.getShort(76) & 0xFFFF);
+        if (available < record0 + 24) {
+            return record0 + 24;
+        }
+        final int headerLength = buffer.getInt(record0 + 20);
+        if (headerLength < MobiHeader.MIN_HEADER_LENGTH || headerLength > MobiHeader.MAX_HEADER_LENGTH) {
+            throw new MobiFormatException("headerLength", headerLength, "MOBI header length " + headerLength
+                    + " not in range [" + MobiHeader.MIN_HEADER_LENGTH + "," + MobiHeader.MAX_HEADER_LENGTH + "]");
+        }
+        final int mobiEnd = record0 + 16 + headerLength;
+        if (available < mobiEnd) {
+            return mobiEnd;
+        }
+        // EXTH flags, within the MOBI header of at least MIN_HEADER_LENGTH bytes
+        if ((buffer.getInt(record0 + 0x80) & 0x40) == 0) {
+            return mobiEnd;
+        }
+        if (available < mobiEnd + EXTH_HEADER_LENGTH) {
+            return mobiEnd + EXTH_HEADER_LENGTH;
+        }
+        final int exthLength = buffer.getInt(mobiEnd + 4);
+        if (exthLength < EXTH_HEADER_LENGTH || exthLength > options.getMaxExthLength()) {
+            throw new MobiFormatException("exthHeader.headerLength", exthLength, "EXTH header length " + exthLength
+                    + " not in range [" + EXTH_HEADER_LENGTH + "," + options.getMaxExthLength() + "]");
+        }
+        exact = true;
+        return mobiEnd + exthLength;
+    }
+
+    private static void closeQuietly(AsynchronousFileChannel channel) {
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package de.m3y.mobi.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Helper for working with byte buffers, using absolute offsets.
+ */
+public class BufferHelper {
+
+    private BufferHelper() {
+        // Not instantiable
+    }
+
+    /**
+     * Gets a big endian view of the buffer.
+     *
+     * @param buffer the buffer.
+     * @return the buffer itself if already big endian, otherwise a big endian duplicate.
+     */
+    public static ByteBuffer bigEndian(ByteBuffer buffer) {
+        return ByteOrder.BIG_ENDIAN == buffer.order() ? buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Reads a string till either number of bytes reached, or 0x0 reached.
+     *
+     * @param buffer        the buffer.
+     * @param offset        the absolute offset.
+     * @param numberOfBytes the maximum number of bytes.
+     * @param charset       the charset
+     * @return string read from buffer.
+     */
+    public static String readStringTillNull(ByteBuffer buffer, int offset, int numberOfBytes, Charset charset) {
+        // Find numberOfBytes depending on first 0x0 byte
+        int len = 0;
+        for (int i = 0; i < numberOfBytes; i++) {
+            if (buffer.get(offset + i) == 0x0) {
+                len = i;
+                break;
+            }
+        }
+        return readString(buffer, offset, len, charset);
+    }
+
+    /**
+     * Reads a string from the buffer of given length.
+     *
+     * @param buffer        the buffer.
+     * @param offset        the absolute offset.
+     * @param numberOfBytes the number of bytes.
+     * @param charset       the charset
+     * @return the string read from the buffer.
+     */
+    public static String readString(ByteBuffer buffer, int offset, int numberOfBytes, Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, numberOfBytes, charset);
+        }
+        byte[] b = new byte[numberOfBytes];
+        for (int i = 0; i < numberOfBytes; i++) {
+            b[i] = buffer.get(offset + i);
+        }
+        return new String(b, charset);
+    }
+}
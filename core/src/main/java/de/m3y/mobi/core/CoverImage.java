@@ -0,0 +1,111 @@
+package de.m3y.mobi.core;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Locates cover and thumbnail image records, without copying image data.
+ * <p>
+ * The EXTH records {@link MobiHeader.Exth.RecordType#COVER_OFFSET} and
+ * {@link MobiHeader.Exth.RecordType#THUMB_OFFSET} are relative to {@link MobiHeader#firstImageIndex}, which is
+ * relative to the {@link MobiHeader#headerRecordIndex}.
+ * <p>
+ * Example:
+ * <code>
+ * try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+ * final MobiHeader header = MobiHeader.read(path);
+ * CoverImage.transferTo(channel, header, CoverImage.getCoverRecordIndex(header), out);
+ * }
+ * </code>
+ */
+public class CoverImage {
+    private static final int NO_OFFSET = 0xFFFFFFFF;
+
+    private CoverImage() {
+        // Utility
+    }
+
+    /**
+     * Gets the PDB record index of the cover image.
+     *
+     * @param header the MOBI header.
+     * @return the record index, or -1 if the book has no cover.
+     */
+    public static int getCoverRecordIndex(MobiHeader header) {
+        return getImageRecordIndex(header, MobiHeader.Exth.RecordType.COVER_OFFSET);
+    }
+
+    /**
+     * Gets the PDB record index of the thumbnail image.
+     *
+     * @param header the MOBI header.
+     * @return the record index, or -1 if the book has no thumbnail.
+     */
+    public static int getThumbnailRecordIndex(MobiHeader header) {
+        return getImageRecordIndex(header, MobiHeader.Exth.RecordType.THUMB_OFFSET);
+    }
+
+    private static int getImageRecordIndex(MobiHeader header, int recordTypeCode) {
+        if (null == header.exthHeader || header.firstImageIndex == NO_OFFSET) {
+            return -1;
+        }
+        final int offset = header.exthHeader.getInt(recordTypeCode, NO_OFFSET);
+        if (offset == NO_OFFSET) {
+            return -1;
+        }
+        final long index = header.headerRecordIndex + (header.firstImageIndex & 0xFFFFFFFFL) + (offset & 0xFFFFFFFFL);
+        return index < (header.palmDatabaseHeader.numRecords & 0xFFFF) ? (int) index : -1;
+    }
+
+    /**
+     * Slices a record from the buffer, sharing the content.
+     *
+     * @param buffer      the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header      the MOBI header read from the buffer, including the PDB records.
+     * @param recordIndex the PDB record index, e.g. from {@link #getCoverRecordIndex(MobiHeader)}.
+     * @return the record content, as read only slice of the buffer.
+     */
+    public static ByteBuffer slice(ByteBuffer buffer, MobiHeader header, int recordIndex) {
+        final PalmDatabase.Header pdbHeader = header.palmDatabaseHeader;
+        final int offset = pdbHeader.getRecordOffset(recordIndex);
+        final int length = pdbHeader.getRecordLength(recordIndex, buffer.limit());
+        final ByteBuffer duplicate = buffer.asReadOnlyBuffer();
+        ((Buffer) duplicate).limit(offset + length);
+        ((Buffer) duplicate).position(offset);
+        return duplicate.slice();
+    }
+
+    /**
+     * Transfers a record from the file channel to the target channel, without copying through the heap.
+     *
+     * @param channel     the file channel of the MOBI file.
+     * @param header      the MOBI header read from the file.
+     * @param recordIndex the PDB record index, e.g. from {@link #getCoverRecordIndex(MobiHeader)}.
+     * @param target      the target channel.
+     * @return the number of transferred bytes.
+     * @throws IOException on error.
+     */
+    public static long transferTo(FileChannel channel, MobiHeader header, int recordIndex, WritableByteChannel target)
+            throws IOException {
+        final PalmDatabase.Header pdbHeader = header.palmDatabaseHeader;
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("File of " + size + " bytes exceeds maximum PDB size");
+        }
+        final long offset = pdbHeader.getRecordOffset(recordIndex);
+        final long length = pdbHeader.getRecordLength(recordIndex, (int) size);
+        long transferred = 0;
+        while (transferred < length) {
+            final long n = channel.transferTo(offset + transferred, length - transferred, target);
+            if (n <= 0) {
+                throw new IllegalStateException("Can not transfer record " + recordIndex + ", transferred "
+                        + transferred + " of " + length + " bytes");
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+}
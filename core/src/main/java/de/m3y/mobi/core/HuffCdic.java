@@ -0,0 +1,232 @@
+package de.m3y.mobi.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * HUFF/CDIC decompression, as used for {@link MobiHeader.CompressionType#HUFF_CDIC_COMPRESSION}.
+ * <p>
+ * The HUFF record contains the Huffman code tables, the following CDIC records the dictionary of phrases.
+ * Both get parsed once per book into flat tables. Phrases which are compressed themselves get expanded on first
+ * use only, and cached for the book.
+ * <p>
+ * Decompression is thread safe, so records of a book can be decompressed in parallel.
+ * <p>
+ * See <a href="https://wiki.mobileread.com/wiki/MOBI#HUFF_record">https://wiki.mobileread.com/wiki/MOBI#HUFF_record</a>
+ * and <a href="https://github.com/kevinhendricks/KindleUnpack/blob/master/lib/mobi_uncompress.py">https://github.com/kevinhendricks/KindleUnpack/blob/master/lib/mobi_uncompress.py</a>
+ */
+public class HuffCdic {
+    private static final int MAX_EXPANSION_DEPTH = 32;
+
+    private final ByteBuffer buffer;
+    // Code length, terminal flag and maximum code, indexed by the upper 8 bits of the code
+    private final byte[] codeLengths = new byte[256];
+    private final boolean[] terminal = new boolean[256];
+    private final long[] maxCodes = new long[256];
+    // Minimum and maximum code, indexed by code length
+    private final long[] minCodeByLength = new long[33];
+    private final long[] maxCodeByLength = new long[33];
+    // Dictionary phrases: absolute offset and length in buffer, and whether the phrase is already uncompressed
+    private int phraseCount;
+    private int[] phraseOffsets;
+    private int[] phraseLengths;
+    private boolean[] phraseLiteral;
+    // Expanded compressed phrases, safely published to other threads
+    private AtomicReferenceArray<byte[]> expandedPhrases;
+
+    private HuffCdic(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads the HUFF and CDIC records referenced by the MOBI header.
+     *
+     * @param buffer the buffer containing the MOBI file.
+     * @param header the MOBI header read from the buffer, including the PDB records.
+     * @return the decompressor for the text records of this book.
+     */
+    public static HuffCdic read(ByteBuffer buffer, MobiHeader header) {
+        final PalmDatabase.Header pdbHeader = header.palmDatabaseHeader;
+        final int huffRecordIndex = header.headerRecordIndex + header.huffmanRecordOffset;
+        final int[] cdicOffsets = new int[header.huffmanRecordCount - 1];
+        for (int i = 0; i < cdicOffsets.length; i++) {
+            cdicOffsets[i] = pdbHeader.getRecordOffset(huffRecordIndex + 1 + i);
+        }
+        return read(buffer, pdbHeader.getRecordOffset(huffRecordIndex), cdicOffsets);
+    }
+
+    /**
+     * Reads the HUFF and CDIC records.
+     *
+     * @param buffer      the buffer.
+     * @param huffOffset  the absolute offset of the HUFF record.
+     * @param cdicOffsets the absolute offsets of the CDIC records.
+     * @return the decompressor.
+     */
+    public static HuffCdic read(ByteBuffer buffer, int huffOffset, int... cdicOffsets) {
+        final HuffCdic huffCdic = new HuffCdic(BufferHelper.bigEndian(buffer));
+        huffCdic.readHuff(huffOffset);
+        for (int cdicOffset : cdicOffsets) {
+            huffCdic.readCdic(cdicOffset);
+        }
+        if (null == huffCdic.phraseOffsets) {
+            throw new IllegalStateException("Expected at least one CDIC record");
+        }
+        return huffCdic;
+    }
+
+    private void readHuff(int offset) {
+        final String identifier = StringPool.readTag(buffer, offset);
+        if (!"HUFF".equals(identifier) || buffer.getInt(offset + 4) != 0x18) {
+            throw new IllegalStateException("Expected HUFF record but got " + identifier);
+        }
+        final int codeTableOffset = offset + buffer.getInt(offset + 8);
+        for (int i = 0; i < 256; i++) {
+            final int v = buffer.getInt(codeTableOffset + i * 4);
+            final int codeLength = v & 0x1F;
+            if (codeLength == 0) {
+                throw new IllegalStateException("Invalid code length 0 for code table entry " + i);
+            }
+            codeLengths[i] = (byte) codeLength;
+            terminal[i] = (v & 0x80) != 0;
+            maxCodes[i] = (((v >>> 8) + 1L) << (32 - codeLength)) - 1;
+        }
+        final int minMaxTableOffset = offset + buffer.getInt(offset + 12);
+        maxCodeByLength[0] = 0xFFFFFFFFL;
+        for (int codeLength = 1; codeLength <= 32; codeLength++) {
+            final int pos = minMaxTableOffset + (codeLength - 1) * 8;
+            minCodeByLength[codeLength] = (buffer.getInt(pos) & 0xFFFFFFFFL) << (32 - codeLength);
+            maxCodeByLength[codeLength] = (((buffer.getInt(pos + 4) & 0xFFFFFFFFL) + 1) << (32 - codeLength)) - 1;
+        }
+    }
+
+    private void readCdic(int offset) {
+        final String identifier = StringPool.readTag(buffer, offset);
+        if (!"CDIC".equals(identifier) || buffer.getInt(offset + 4) != 0x10) {
+            throw new IllegalStateException("Expected CDIC record but got " + identifier);
+        }
+        final int phrases = buffer.getInt(offset + 8);
+        final int bits = buffer.getInt(offset + 12);
+        if (null == phraseOffsets) {
+            phraseOffsets = new int[phrases];
+            phraseLengths = new int[phrases];
+            phraseLiteral = new boolean[phrases];
+            expandedPhrases = new AtomicReferenceArray<>(phrases);
+        }
+        final int n = Math.min(bits < 31 ? 1 << bits : Integer.MAX_VALUE, phraseOffsets.length - phraseCount);
+        for (int i = 0; i < n; i++) {
+            final int phraseOffset = offset + 16 + (buffer.getShort(offset + 16 + i * 2) & 0xFFFF);
+            final int lengthAndFlag = buffer.getShort(phraseOffset) & 0xFFFF;
+            phraseOffsets[phraseCount] = phraseOffset + 2;
+            phraseLengths[phraseCount] = lengthAndFlag & 0x7FFF;
+            phraseLiteral[phraseCount] = (lengthAndFlag & 0x8000) != 0;
+            phraseCount++;
+        }
+    }
+
+    /**
+     * Decompresses a HUFF/CDIC compressed record into the given array.
+     *
+     * @param in        the buffer containing the compressed data.
+     * @param offset    the absolute offset of the compressed data.
+     * @param length    the length of the compressed data, excluding any trailing entries.
+     * @param out       the output array.
+     * @param outOffset the offset in the output array.
+     * @param maxLength the maximum number of decompressed bytes, e.g. {@link MobiHeader#recordSize}.
+     * @return the number of decompressed bytes.
+     * @throws IllegalStateException if the data is corrupt or exceeds the maximum length.
+     */
+    public int decompress(ByteBuffer in, int offset, int length, byte[] out, int outOffset, int maxLength) {
+        final int outLimit = outOffset + Math.min(maxLength, out.length - outOffset);
+        return unpack(BufferHelper.bigEndian(in), offset, length, out, outOffset, outLimit, 0) - outOffset;
+    }
+
+    private int unpack(ByteBuffer in, int offset, int length, byte[] out, int outPos, int outLimit, int depth) {
+        final int end = offset + length;
+        long bitsLeft = length * 8L;
+        int pos = offset;
+        long x = readLong(in, pos, end);
+        int n = 32;
+        while (true) {
+            if (n <= 0) {
+                pos += 4;
+                x = readLong(in, pos, end);
+                n += 32;
+            }
+            final long code = (x >>> n) & 0xFFFFFFFFL;
+            final int top = (int) (code >>> 24);
+            int codeLength = codeLengths[top];
+            long maxCode = maxCodes[top];
+            if (!terminal[top]) {
+                while (code < minCodeByLength[codeLength]) {
+                    if (++codeLength > 32) {
+                        throw new IllegalStateException("Invalid code " + code + " at " + pos);
+                    }
+                }
+                maxCode = maxCodeByLength[codeLength];
+            }
+            n -= codeLength;
+            bitsLeft -= codeLength;
+            if (bitsLeft < 0) {
+                break;
+            }
+
+            final long phrase = (maxCode - code) >>> (32 - codeLength);
+            if (phrase < 0 || phrase >= phraseCount) {
+                throw new IllegalStateException("Invalid phrase index " + phrase + " at " + pos);
+            }
+            outPos = writePhrase((int) phrase, out, outPos, outLimit, depth);
+        }
+        return outPos;
+    }
+
+    private int writePhrase(int phrase, byte[] out, int outPos, int outLimit, int depth) {
+        if (phraseLiteral[phrase]) {
+            final int phraseLength = phraseLengths[phrase];
+            if (outPos + phraseLength > outLimit) {
+                throw exceedsMaxLength(outLimit);
+            }
+            final int phraseOffset = phraseOffsets[phrase];
+            for (int i = 0; i < phraseLength; i++) {
+                out[outPos++] = buffer.get(phraseOffset + i);
+            }
+            return outPos;
+        }
+
+        final byte[] expanded = expandedPhrases.get(phrase);
+        if (null != expanded) {
+            if (outPos + expanded.length > outLimit) {
+                throw exceedsMaxLength(outLimit);
+            }
+            System.arraycopy(expanded, 0, out, outPos, expanded.length);
+            return outPos + expanded.length;
+        }
+
+        // Expand directly into the output, and keep a copy for further occurrences.
+        // Concurrent threads might expand the same phrase, with identical results.
+        if (depth >= MAX_EXPANSION_DEPTH) {
+            throw new IllegalStateException("Phrase " + phrase + " exceeds maximum expansion depth");
+        }
+        final int end = unpack(buffer, phraseOffsets[phrase], phraseLengths[phrase], out, outPos, outLimit,
+                depth + 1);
+        expandedPhrases.set(phrase, Arrays.copyOfRange(out, outPos, end));
+        return end;
+    }
+
+    private static long readLong(ByteBuffer in, int pos, int end) {
+        if (pos + 8 <= end) {
+            return in.getLong(pos);
+        }
+        // Pad with zero bytes
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (pos + i < end ? in.get(pos + i) & 0xFF : 0);
+        }
+        return value;
+    }
+
+    private static IllegalStateException exceedsMaxLength(int outLimit) {
+        return new IllegalStateException("Decompressed data exceeds maximum length at output offset " + outLimit);
+    }
+}
@@ -0,0 +1,438 @@
+package de.m3y.mobi.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads INDX index records, e.g. the NCX, skeleton or orthographic (dictionary) index.
+ * <p>
+ * An index consists of a main INDX record containing the TAGX tag table, followed by INDX records containing
+ * the entries, and optional CNCX records containing strings referenced by entries.
+ * Only the record headers get read when opening the index. Entries get decoded on access, so iterating or
+ * searching by key does not require decoding the whole index.
+ * <p>
+ * Example:
+ * <code>
+ * final Index ncx = Index.read(buffer, header, header.ncxIndex);
+ * for (Index.Entry entry : ncx) {
+ * String label = ncx.getCncxString(entry.getTagValue(3, 0));
+ * ...
+ * }
+ * </code>
+ * <p>
+ * See <a href="https://wiki.mobileread.com/wiki/MOBI#INDX_Records">https://wiki.mobileread.com/wiki/MOBI#INDX_Records</a>
+ */
+public class Index implements Iterable<Index.Entry> {
+    /**
+     * Value of a MOBI header index field if there is no index.
+     */
+    public static final int NO_INDEX = 0xFFFFFFFF;
+    private static final int[] NO_VALUES = new int[0];
+
+    private final ByteBuffer buffer;
+    private final Charset encoding;
+    private final Charset keyEncoding;
+    private final char[] ordt;
+    private final int controlByteCount;
+    private final int[] tagTable; // Tag, values per entry, mask, end flag
+    private final int[] recordOffsets;
+    private final int[] idxtOffsets;
+    private final int[] entryBase; // First entry index per record, and total count
+    private final int[] cncxOffsets;
+
+    private Index(ByteBuffer buffer, Charset encoding, Charset keyEncoding, char[] ordt, int controlByteCount,
+                  int[] tagTable, int[] recordOffsets, int[] idxtOffsets, int[] entryBase, int[] cncxOffsets) {
+        this.buffer = buffer;
+        this.encoding = encoding;
+        this.keyEncoding = keyEncoding;
+        this.ordt = ordt;
+        this.controlByteCount = controlByteCount;
+        this.tagTable = tagTable;
+        this.recordOffsets = recordOffsets;
+        this.idxtOffsets = idxtOffsets;
+        this.entryBase = entryBase;
+        this.cncxOffsets = cncxOffsets;
+    }
+
+    /**
+     * An index entry, with tag values decoded into primitive arrays.
+     */
+    public static class Entry {
+        public final String key;
+        private final int[] tags;
+        private final int[] valueStarts;
+        private final int[] values;
+
+        Entry(String key, int[] tags, int[] valueStarts, int[] values) {
+            this.key = key;
+            this.tags = tags;
+            this.valueStarts = valueStarts;
+            this.values = values;
+        }
+
+        /**
+         * Gets the values of a tag.
+         *
+         * @param tag the tag, as defined by the TAGX tag table.
+         * @return the values, or null if the entry does not contain the tag.
+         */
+        public int[] getTagValues(int tag) {
+            for (int i = 0; i < tags.length; i++) {
+                if (tags[i] == tag) {
+                    return Arrays.copyOfRange(values, valueStarts[i], valueStarts[i + 1]);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets the first value of a tag.
+         *
+         * @param tag          the tag, as defined by the TAGX tag table.
+         * @param defaultValue the value if the entry does not contain the tag.
+         * @return the value, or the default value.
+         */
+        public int getTagValue(int tag, int defaultValue) {
+            for (int i = 0; i < tags.length; i++) {
+                if (tags[i] == tag && valueStarts[i] < valueStarts[i + 1]) {
+                    return values[valueStarts[i]];
+                }
+            }
+            return defaultValue;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder buf = new StringBuilder("Entry{key='").append(key).append('\'');
+            for (int i = 0; i < tags.length; i++) {
+                buf.append(", ").append(tags[i]).append('=')
+                        .append(Arrays.toString(Arrays.copyOfRange(values, valueStarts[i], valueStarts[i + 1])));
+            }
+            return buf.append('}').toString();
+        }
+    }
+
+    /**
+     * Reads an index referenced by a MOBI header field, e.g. {@link MobiHeader#ncxIndex}.
+     *
+     * @param buffer     the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header     the MOBI header read from the buffer, including the PDB records.
+     * @param indexField the index field value, relative to {@link MobiHeader#headerRecordIndex}.
+     * @return the index.
+     */
+    public static Index read(ByteBuffer buffer, MobiHeader header, int indexField) {
+        if (indexField == NO_INDEX) {
+            throw new IllegalArgumentException("No index available");
+        }
+        return read(buffer, header.palmDatabaseHeader, header.headerRecordIndex + indexField, header.encoding);
+    }
+
+    /**
+     * Reads an index.
+     *
+     * @param buffer      the buffer containing the MOBI file.
+     * @param pdbHeader   the PDB header, including the records.
+     * @param recordIndex the PDB record index of the main INDX record.
+     * @param encoding    the encoding of CNCX strings, and of keys unless specified by the INDX record.
+     * @return the index.
+     */
+    public static Index read(ByteBuffer buffer, PalmDatabase.Header pdbHeader, int recordIndex, Charset encoding) {
+        buffer = BufferHelper.bigEndian(buffer);
+        final int main = pdbHeader.getRecordOffset(recordIndex);
+        checkIdentifier(buffer, main, StringPool.INDX, recordIndex);
+        final int headerLength = buffer.getInt(main + 4);
+        final int recordCount = buffer.getInt(main + 24);
+        final int code = buffer.getInt(main + 28);
+        final int cncxCount = buffer.getInt(main + 52);
+
+        // TAGX
+        final int tagx = main + headerLength;
+        checkIdentifier(buffer, tagx, "TAGX", recordIndex);
+        final int tagxLength = buffer.getInt(tagx + 4);
+        final int controlByteCount = buffer.getInt(tagx + 8);
+        final int[] tagTable = new int[(tagxLength - 12) / 4 * 4];
+        for (int i = 0; i < tagTable.length; i++) {
+            tagTable[i] = buffer.get(tagx + 12 + i) & 0xFF;
+        }
+
+        // ORDT, for mapping key bytes to characters
+        char[] ordt = null;
+        if (headerLength >= 0xC0) {
+            final int ordtCount = buffer.getInt(main + 0xA4);
+            final int ordtEntries = buffer.getInt(main + 0xA8);
+            final int ordt2Offset = buffer.getInt(main + 0xB0);
+            if (ordtCount != 0 || ordtEntries > 0) {
+                checkIdentifier(buffer, main + ordt2Offset, "ORDT", recordIndex);
+                ordt = new char[ordtEntries];
+                for (int i = 0; i < ordtEntries; i++) {
+                    ordt[i] = buffer.getChar(main + ordt2Offset + 4 + i * 2);
+                }
+            }
+        }
+
+        final int[] recordOffsets = new int[recordCount];
+        final int[] idxtOffsets = new int[recordCount];
+        final int[] entryBase = new int[recordCount + 1];
+        for (int i = 0; i < recordCount; i++) {
+            final int offset = pdbHeader.getRecordOffset(recordIndex + 1 + i);
+            checkIdentifier(buffer, offset, StringPool.INDX, recordIndex + 1 + i);
+            recordOffsets[i] = offset;
+            idxtOffsets[i] = offset + buffer.getInt(offset + 20);
+            checkIdentifier(buffer, idxtOffsets[i], "IDXT", recordIndex + 1 + i);
+            entryBase[i + 1] = entryBase[i] + buffer.getInt(offset + 24);
+        }
+
+        final int[] cncxOffsets = new int[cncxCount];
+        for (int i = 0; i < cncxCount; i++) {
+            cncxOffsets[i] = pdbHeader.getRecordOffset(recordIndex + 1 + recordCount + i);
+        }
+
+        final Charset keyEncoding = code == 65001 ? StandardCharsets.UTF_8
+                : code == 1252 ? Charset.forName("CP1252") : encoding;
+        return new Index(buffer, encoding, keyEncoding, ordt, controlByteCount, tagTable, recordOffsets,
+                idxtOffsets, entryBase, cncxOffsets);
+    }
+
+    private static void checkIdentifier(ByteBuffer buffer, int offset, String identifier, int recordIndex) {
+        final String actual = StringPool.readTag(buffer, offset);
+        if (!identifier.equals(actual)) {
+            throw new IllegalStateException("Expected record " + recordIndex + " to contain " + identifier
+                    + " but got " + actual);
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return entryBase[entryBase.length - 1];
+    }
+
+    /**
+     * Gets the number of CNCX records.
+     *
+     * @return the number of CNCX records.
+     */
+    public int getCncxRecordCount() {
+        return cncxOffsets.length;
+    }
+
+    /**
+     * Gets the key of an entry, without decoding tag values.
+     *
+     * @param index the entry index, from 0 to {@link #size()} - 1.
+     * @return the key.
+     */
+    public String getKey(int index) {
+        return decodeKey(getEntryOffset(index));
+    }
+
+    /**
+     * Decodes an entry.
+     *
+     * @param index the entry index, from 0 to {@link #size()} - 1.
+     * @return the entry.
+     */
+    public Entry getEntry(int index) {
+        final int record = getRecord(index);
+        final int entry = index - entryBase[record];
+        final int start = getEntryOffset(record, entry);
+        final int end = entry + 1 < entryBase[record + 1] - entryBase[record]
+                ? getEntryOffset(record, entry + 1) : idxtOffsets[record];
+        return decodeEntry(start, end);
+    }
+
+    /**
+     * Searches an entry by key, decoding only the keys visited by binary search.
+     * <p>
+     * Assumes entries are sorted by key in natural string order.
+     *
+     * @param key the key.
+     * @return the entry index, or (-(insertion point) - 1) if not found.
+     */
+    public int find(String key) {
+        return find(key, Comparator.naturalOrder());
+    }
+
+    /**
+     * Searches an entry by key, decoding only the keys visited by binary search.
+     *
+     * @param key        the key.
+     * @param comparator the order of entries, e.g. case insensitive for dictionaries.
+     * @return the entry index, or (-(insertion point) - 1) if not found.
+     */
+    public int find(String key, Comparator<String> comparator) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = comparator.compare(getKey(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Gets a string from the CNCX records, e.g. an NCX label.
+     *
+     * @param offset the CNCX offset, with the CNCX record number in the upper 16 bits.
+     * @return the string.
+     */
+    public String getCncxString(int offset) {
+        final int record = offset >>> 16;
+        if (record >= cncxOffsets.length) {
+            throw new IndexOutOfBoundsException("CNCX offset " + offset + " exceeds " + cncxOffsets.length
+                    + " CNCX records");
+        }
+        int pos = cncxOffsets[record] + (offset & 0xFFFF);
+        int length = 0;
+        int b;
+        do {
+            b = buffer.get(pos++);
+            length = (length << 7) | (b & 0x7F);
+        } while ((b & 0x80) == 0);
+        return BufferHelper.readString(buffer, pos, length, encoding);
+    }
+
+    /**
+     * Iterates over entries, decoding one entry at a time.
+     *
+     * @return the iterator.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getEntry(next++);
+            }
+        };
+    }
+
+    private int getRecord(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Entry index " + index + " out of range [0," + size() + ")");
+        }
+        // Last record with entryBase <= index, skipping records without entries
+        int low = 0;
+        int high = entryBase.length - 2;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (entryBase[mid] <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int getEntryOffset(int index) {
+        final int record = getRecord(index);
+        return getEntryOffset(record, index - entryBase[record]);
+    }
+
+    private int getEntryOffset(int record, int entry) {
+        return recordOffsets[record] + (buffer.getShort(idxtOffsets[record] + 4 + entry * 2) & 0xFFFF);
+    }
+
+    private String decodeKey(int start) {
+        final int length = buffer.get(start) & 0xFF;
+        if (null == ordt) {
+            return BufferHelper.readString(buffer, start + 1, length, keyEncoding);
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            final int b = buffer.get(start + 1 + i) & 0xFF;
+            chars[i] = b < ordt.length ? ordt[b] : (char) b;
+        }
+        return new String(chars);
+    }
+
+    private Entry decodeEntry(int start, int end) {
+        final String key = decodeKey(start);
+        final int controlBytes = start + 1 + (buffer.get(start) & 0xFF);
+        int pos = controlBytes + controlByteCount;
+
+        // Per tag: value count, or byte count if negative
+        final int tagCount = tagTable.length / 4;
+        final int[] tags = new int[tagCount];
+        final int[] counts = new int[tagCount];
+        int found = 0;
+        int controlByteIndex = 0;
+        for (int i = 0; i < tagTable.length; i += 4) {
+            final int mask = tagTable[i + 2];
+            if (tagTable[i + 3] == 1) {
+                controlByteIndex++;
+                continue;
+            }
+            int value = buffer.get(controlBytes + controlByteIndex) & mask;
+            if (value == 0) {
+                continue;
+            }
+            tags[found] = tagTable[i];
+            if (value == mask && Integer.bitCount(mask) > 1) {
+                // Variable width value containing the number of bytes of values
+                int byteCount = 0;
+                int b;
+                do {
+                    b = buffer.get(pos++);
+                    byteCount = (byteCount << 7) | (b & 0x7F);
+                } while ((b & 0x80) == 0 && pos < end);
+                counts[found] = -byteCount;
+            } else {
+                value >>>= Integer.numberOfTrailingZeros(mask);
+                counts[found] = value * tagTable[i + 1];
+            }
+            found++;
+        }
+
+        final int[] valueStarts = new int[found + 1];
+        int[] values = found > 0 ? new int[found * 2] : NO_VALUES;
+        int valueCount = 0;
+        for (int t = 0; t < found; t++) {
+            valueStarts[t] = valueCount;
+            final int limit = counts[t] < 0 ? pos - counts[t] : end;
+            for (int n = 0; counts[t] < 0 ? pos < limit : n < counts[t]; n++) {
+                if (pos >= end) {
+                    throw new IllegalStateException("Index entry '" + key + "' exceeds entry end " + end);
+                }
+                int value = 0;
+                int b;
+                do {
+                    b = buffer.get(pos++);
+                    value = (value << 7) | (b & 0x7F);
+                } while ((b & 0x80) == 0 && pos < end);
+                if (valueCount == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                values[valueCount++] = value;
+            }
+        }
+        valueStarts[found] = valueCount;
+        return new Entry(key, Arrays.copyOf(tags, found), valueStarts, values);
+    }
+}
@@ -0,0 +1,137 @@
+package de.m3y.mobi.core;
+
+import java.util.function.IntFunction;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Reports parse phases as JDK Flight Recorder events.
+ * <p>
+ * Only loaded reflectively by {@link ParseEvents}, as the {@code jdk.jfr} module may be unavailable.
+ * The loaded instance creates a listener per parse phase, which begins the event of the phase on creation and
+ * ends and commits it when the phase completes. So events carry the phase duration, and JFR thresholds apply.
+ */
+final class JfrParseListener implements ParseListener, IntFunction<ParseListener> {
+    private static final EventType PALM_DATABASE_HEADER = EventType.getEventType(PalmDatabaseHeaderEvent.class);
+    private static final EventType MOBI_HEADER = EventType.getEventType(MobiHeaderEvent.class);
+    private static final EventType EXTH_HEADER = EventType.getEventType(ExthHeaderEvent.class);
+
+    private final Event event; // Begun event of the phase, null for the factory instance
+
+    JfrParseListener() {
+        this(null);
+    }
+
+    private JfrParseListener(Event event) {
+        this.event = event;
+    }
+
+    @Override
+    public ParseListener apply(int phase) {
+        final Event phaseEvent;
+        switch (phase) {
+            case ParseEvents.PALM_DATABASE_HEADER:
+                phaseEvent = PALM_DATABASE_HEADER.isEnabled() ? new PalmDatabaseHeaderEvent() : null;
+                break;
+            case ParseEvents.MOBI_HEADER:
+                phaseEvent = MOBI_HEADER.isEnabled() ? new MobiHeaderEvent() : null;
+                break;
+            case ParseEvents.EXTH_HEADER:
+                phaseEvent = EXTH_HEADER.isEnabled() ? new ExthHeaderEvent() : null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown parse phase " + phase);
+        }
+        if (null == phaseEvent) {
+            return null;
+        }
+        phaseEvent.begin();
+        return new JfrParseListener(phaseEvent);
+    }
+
+    @Override
+    public void palmDatabaseHeaderRead(int bytes, int numRecords, long elapsedNanos) {
+        if (event instanceof PalmDatabaseHeaderEvent) {
+            final PalmDatabaseHeaderEvent palmDatabaseHeaderEvent = (PalmDatabaseHeaderEvent) event;
+            palmDatabaseHeaderEvent.bytes = bytes;
+            palmDatabaseHeaderEvent.numRecords = numRecords;
+            commit();
+        }
+    }
+
+    @Override
+    public void mobiHeaderRead(int bytes, int recordIndex, long elapsedNanos) {
+        if (event instanceof MobiHeaderEvent) {
+            final MobiHeaderEvent mobiHeaderEvent = (MobiHeaderEvent) event;
+            mobiHeaderEvent.bytes = bytes;
+            mobiHeaderEvent.recordIndex = recordIndex;
+            commit();
+        }
+    }
+
+    @Override
+    public void exthHeaderRead(int bytes, int recordCount, long elapsedNanos) {
+        if (event instanceof ExthHeaderEvent) {
+            final ExthHeaderEvent exthHeaderEvent = (ExthHeaderEvent) event;
+            exthHeaderEvent.bytes = bytes;
+            exthHeaderEvent.recordCount = recordCount;
+            commit();
+        }
+    }
+
+    private void commit() {
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit();
+        }
+    }
+
+    @Name("de.m3y.mobi.PalmDatabaseHeaderRead")
+    @Label("PDB Header Read")
+    @Description("Reading the PDB header and record entries")
+    @Category("libmobi")
+    @StackTrace(false)
+    static class PalmDatabaseHeaderEvent extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Number of Records")
+        int numRecords;
+    }
+
+    @Name("de.m3y.mobi.MobiHeaderRead")
+    @Label("MOBI Header Read")
+    @Description("Reading the PalmDOC and MOBI header, excluding the EXTH header")
+    @Category("libmobi")
+    @StackTrace(false)
+    static class MobiHeaderEvent extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Record Index")
+        int recordIndex;
+    }
+
+    @Name("de.m3y.mobi.ExthHeaderRead")
+    @Label("EXTH Header Read")
+    @Description("Reading the EXTH header and records")
+    @Category("libmobi")
+    @StackTrace(false)
+    static class ExthHeaderEvent extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("EXTH Record Count")
+        int recordCount;
+    }
+}
@@ -0,0 +1,107 @@
+package de.m3y.mobi.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A MOBI file, including the KF8 header of hybrid (MOBI 6 and KF8) files.
+ * <p>
+ * Hybrid files contain the legacy MOBI header in record 0, and the KF8 header in the record referenced by
+ * {@link MobiHeader.Exth.RecordType#KF8_BOUNDARY_OFFSET}. The KF8 header gets read by seeking directly to
+ * the boundary record.
+ * <p>
+ * Example:
+ * <code>
+ * final MobiFile file = MobiFile.read(path);
+ * if (null != file.kf8Header) {
+ * ...
+ * }
+ * </code>
+ */
+public class MobiFile {
+    private static final int NO_BOUNDARY = 0xFFFFFFFF;
+    private static final int KF8_FILE_VERSION = 8;
+
+    /**
+     * The header in record 0, the legacy MOBI header for hybrid files.
+     */
+    public final MobiHeader header;
+    /**
+     * The KF8 header, same as {@link #header} for KF8 only files, or null for MOBI 6 only files.
+     */
+    public final MobiHeader kf8Header;
+
+    MobiFile(MobiHeader header, MobiHeader kf8Header) {
+        this.header = header;
+        this.kf8Header = kf8Header;
+    }
+
+    /**
+     * Reads a MOBI file, by memory mapping the file.
+     *
+     * @param path the MOBI file.
+     * @return the MOBI file.
+     * @throws IOException on error.
+     */
+    public static MobiFile read(Path path) throws IOException {
+        return read(path, new ParseOptions());
+    }
+
+    /**
+     * Reads a MOBI file, by memory mapping the file.
+     *
+     * @param path    the MOBI file.
+     * @param options the parse options, used for both headers.
+     * @return the MOBI file.
+     * @throws IOException on error.
+     */
+    public static MobiFile read(Path path, ParseOptions options) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), options);
+        }
+    }
+
+    /**
+     * Reads a MOBI file from a buffer containing the file.
+     *
+     * @param buffer  the buffer, e.g. a mapped MOBI file.
+     * @param options the parse options, used for both headers. If selecting EXTH record types,
+     *                include {@link MobiHeader.Exth.RecordType#KF8_BOUNDARY_OFFSET}.
+     * @return the MOBI file.
+     */
+    public static MobiFile read(ByteBuffer buffer, ParseOptions options) {
+        final MobiHeader header = MobiHeader.read(buffer, options);
+        final int boundary = getKf8Boundary(header);
+        if (boundary != NO_BOUNDARY) {
+            return new MobiFile(header, MobiHeader.read(buffer, header.palmDatabaseHeader, boundary, options));
+        }
+        return new MobiFile(header, header.fileVersion >= KF8_FILE_VERSION ? header : null);
+    }
+
+    private static int getKf8Boundary(MobiHeader header) {
+        if (null == header.exthHeader) {
+            return NO_BOUNDARY;
+        }
+        return header.exthHeader.getInt(MobiHeader.Exth.RecordType.KF8_BOUNDARY_OFFSET, NO_BOUNDARY);
+    }
+
+    /**
+     * Checks if the file contains both a legacy MOBI header and a KF8 header.
+     *
+     * @return true, if hybrid.
+     */
+    public boolean isHybrid() {
+        return null != kf8Header && kf8Header != header;
+    }
+
+    @Override
+    public String toString() {
+        return "MobiFile{" +
+                "header=" + header +
+                ", kf8Header=" + kf8Header +
+                '}';
+    }
+}
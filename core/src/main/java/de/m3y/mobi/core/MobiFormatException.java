@@ -0,0 +1,34 @@
+package de.m3y.mobi.core;
+
+/**
+ * Thrown by validating parsing if a field exceeds the file or a configured limit.
+ * <p>
+ * Validation happens before allocating, so corrupt or hostile files fail fast with bounded memory.
+ *
+ * @see ParseOptions#validate(boolean)
+ */
+public class MobiFormatException extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The name of the invalid field, e.g. "numRecords" or "exthHeader.recordCount".
+     */
+    public final String field;
+    /**
+     * The invalid value.
+     */
+    public final long value;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param field   the name of the invalid field.
+     * @param value   the invalid value.
+     * @param message the detail message.
+     */
+    public MobiFormatException(String field, long value, String message) {
+        super(message);
+        this.field = field;
+        this.value = value;
+    }
+}
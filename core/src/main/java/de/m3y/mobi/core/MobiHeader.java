@@ -2,11 +2,20 @@ package de.m3y.mobi.core;
 
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
 
 /**
  * Reads MOBI header data.
@@ -50,11 +59,53 @@ public class MobiHeader {
                 record.typeCode = is.readInt();
                 record.typeLabel = RecordType.getLabel(record.typeCode);
                 record.length = is.readInt();
-                record.data = StreamHelper.readString(is,
-                        record.length - 8 /* size of type and length */, encoding);
+                record.data = canonicalize(record.typeCode, StreamHelper.readString(is,
+                        record.length - 8 /* size of type and length */, encoding));
                 return record;
             }
 
+            /**
+             * Reads a new record from buffer.
+             *
+             * @param buffer   the buffer.
+             * @param offset   the absolute offset of the record.
+             * @param encoding the encoding charset
+             * @return the representing header.
+             */
+            public static Record read(ByteBuffer buffer, int offset, Charset encoding) {
+                Record record = new Record();
+                record.typeCode = buffer.getInt(offset);
+                record.typeLabel = RecordType.getLabel(record.typeCode);
+                record.length = buffer.getInt(offset + 4);
+                record.data = canonicalize(record.typeCode, BufferHelper.readString(buffer, offset + 8,
+                        record.length - 8 /* size of type and length */, encoding));
+                return record;
+            }
+
+            /**
+             * Interns data of record types with few distinct values, e.g. languages or publishers.
+             * <p>
+             * Values of high cardinality, such as authors or subjects, do not get interned, as they rarely repeat and
+             * would only evict repeated values from the pool.
+             *
+             * @param typeCode the record type code.
+             * @param data     the record data.
+             * @return the data, canonicalized if applicable.
+             */
+            static String canonicalize(int typeCode, String data) {
+                switch (typeCode) {
+                    case RecordType.PUBLISHER:
+                    case RecordType.TYPE:
+                    case RecordType.SOURCE:
+                    case RecordType.RETAIL_PRICE_CURRENCY:
+                    case RecordType.CDE_TYPE:
+                    case RecordType.LANGUAGE:
+                        return StringPool.intern(data);
+                    default:
+                        return data;
+                }
+            }
+
             @Override
             public String toString() {
                 return "Record{" +
@@ -150,6 +201,45 @@ public class MobiHeader {
             public static final int CONTAINER_ID = 543;
             public static final int IN_MEMORY = 547;
 
+            // Registry of type codes, derived from the constants above
+            private static final int DENSE_TYPE_CODES = 601;
+            private static final String[] LABELS = new String[DENSE_TYPE_CODES];
+            private static final Map<Integer, String> SPARSE_LABELS = new HashMap<>();
+            private static final Map<String, Integer> TYPE_CODES = new HashMap<>();
+            private static final ValueType[] VALUE_TYPES = new ValueType[DENSE_TYPE_CODES];
+
+            static {
+                for (Field field : RecordType.class.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers)
+                            && field.getType() == int.class) {
+                        try {
+                            register(field.getInt(null), field.getName());
+                        } catch (IllegalAccessException ex) {
+                            throw new IllegalStateException("Can not register EXTH record type " + field, ex);
+                        }
+                    }
+                }
+                for (int typeCode : new int[]{SAMPLE, START_READING, KF8_BOUNDARY_OFFSET, COUNT_OF_RESOURCES,
+                        COVER_OFFSET, THUMB_OFFSET, HAS_FAKE_COVER, CREATOR_SOFTWARE_RECORDS, CREATOR_MAJOR_VERSION,
+                        CREATOR_MINOR_VERSION, CREATOR_BUILD_NUMBER, CLIPPING_LIMIT, PUBLISHER_LIMIT, TEXT_TO_SPEECH,
+                        TTS_FLAG, RENT_BORROW_FLAG}) {
+                    VALUE_TYPES[typeCode] = ValueType.INT;
+                }
+                for (int typeCode : new int[]{WATERMARK, TAMPER_PROOF_KEYS, FONT_SIGNATURE, RENT_BORROW_EXPIRATION}) {
+                    VALUE_TYPES[typeCode] = ValueType.BINARY;
+                }
+            }
+
+            private static void register(int typeCode, String label) {
+                if (typeCode >= 0 && typeCode < DENSE_TYPE_CODES) {
+                    LABELS[typeCode] = label;
+                } else {
+                    SPARSE_LABELS.put(typeCode, label);
+                }
+                TYPE_CODES.put(label, typeCode);
+            }
+
             /**
              * Gets a text representation of header type (best effort).
              *
@@ -157,163 +247,76 @@ public class MobiHeader {
              * @return the label or "UNKNOWN"
              */
             public static String getLabel(int typeCode) {
-                switch (typeCode) {
-                    case 1:
-                        return "DRM_SERVER_ID";
-                    case 2:
-                        return "DRM_COMMERCE_ID";
-                    case 3:
-                        return "DRM_EBOOKBASE_BOOK_ID";
-                    case 100:
-                        return "AUTHOR";
-                    case 101:
-                        return "PUBLISHER";
-                    case 102:
-                        return "IMPRINT";
-                    case 103:
-                        return "DESCRIPTION";
-                    case 104:
-                        return "ISBN";
-                    case 105:
-                        return "SUBJECT";
-                    case 106:
-                        return "PUBLISHING_DATE";
-                    case 107:
-                        return "REVIEW";
-                    case 108:
-                        return "CONTRIBUTOR";
-                    case 109:
-                        return "RIGHTS";
-                    case 110:
-                        return "SUBJECT_CODE";
-                    case 111:
-                        return "TYPE";
-                    case 112:
-                        return "SOURCE";
-                    case 113:
-                        return "ASIN";
-                    case 114:
-                        return "VERSION_NUMBER";
-                    case 115:
-                        return "SAMPLE";
-                    case 116:
-                        return "START_READING";
-                    case 117:
-                        return "ADULT";
-                    case 118:
-                        return "RETAIL_PRICE";
-                    case 119:
-                        return "RETAIL_PRICE_CURRENCY";
-                    case 121:
-                        return "KF8_BOUNDARY_OFFSET";
-                    case 122:
-                        return "FIXED_LAYOUT";
-                    case 123:
-                        return "BOOK_TYPE";
-                    case 124:
-                        return "ORIENTATION_LOCK";
-                    case 125:
-                        return "COUNT_OF_RESOURCES";
-                    case 126:
-                        return "ORIGINAL_RESOLUTION";
-                    case 127:
-                        return "ZERO_GUTTER";
-                    case 128:
-                        return "ZERO_MARGIN";
-                    case 129:
-                        return "KF8_COVER_URI";
-                    case 132:
-                        return "REGION_MAGNIFICATION";
-                    case 200:
-                        return "DICT_SHORT_NAME";
-                    case 201:
-                        return "COVER_OFFSET";
-                    case 202:
-                        return "THUMB_OFFSET";
-                    case 203:
-                        return "HAS_FAKE_COVER";
-                    case 204:
-                        return "CREATOR_SOFTWARE_RECORDS";
-                    case 205:
-                        return "CREATOR_MAJOR_VERSION";
-                    case 206:
-                        return "CREATOR_MINOR_VERSION";
-                    case 207:
-                        return "CREATOR_BUILD_NUMBER";
-                    case 208:
-                        return "WATERMARK";
-                    case 209:
-                        return "TAMPER_PROOF_KEYS";
-                    case 300:
-                        return "FONT_SIGNATURE";
-                    case 401:
-                        return "CLIPPING_LIMIT";
-                    case 402:
-                        return "PUBLISHER_LIMIT";
-                    case 403:
-                        return "TEXT_TO_SPEECH";
-                    case 404:
-                        return "TTS_FLAG";
-                    case 405:
-                        return "RENT_BORROW_FLAG";
-                    case 406:
-                        return "RENT_BORROW_EXPIRATION";
-                    case 501:
-                        return "CDE_TYPE";
-                    case 502:
-                        return "LAST_UPDATE_TIME";
-                    case 503:
-                        return "UPDATED_TITLE";
-                    case 504:
-                        return "ASIN_2";
-                    case 508:
-                        return "UNKNOWN_TITLE_FURIGANA";
-                    case 517:
-                        return "UNKNOWN_CREATOR_FURIGANA";
-                    case 522:
-                        return "UNKNOWN_PUBLISHER_FURIGANA";
-                    case 524:
-                        return "LANGUAGE";
-                    case 525:
-                        return "ALIGNMENT";
-                    case 527:
-                        return "PAGE_PROGRESSION";
-                    case 528:
-                        return "OVERRIDE_KINDLE_FONTS";
-                    case 529:
-                        return "KINDLEGEN_SOURCE_TARGET";
-                    case 534:
-                        return "INPUT_SOURCE_TYPE";
-                    case 535:
-                        return "KINDLEGEN_BUILDREV_NUMBER";
-                    case 536:
-                        return "CONTAINER_INFO";
-                    case 538:
-                        return "CONTAINER_RESOLUTION";
-                    case 539:
-                        return "CONTAINER_MIMETYPE";
-                    case 542:
-                        return "UNKNOWN_BUT_CHANGES_WITH_FILE_NAME";
-                    case 543:
-                        return "CONTAINER_ID";
-                    case 547:
-                        return "IN_MEMORY";
+                final String label = typeCode >= 0 && typeCode < DENSE_TYPE_CODES
+                        ? LABELS[typeCode] : SPARSE_LABELS.get(typeCode);
+                return null != label ? label : "UNKNOWN";
+            }
 
-                    default:
-                        return "UNKNOWN";
-                }
+            /**
+             * Gets the type code of a label.
+             *
+             * @param label the label, e.g. "COVER_OFFSET".
+             * @return the type code, or -1 if unknown.
+             */
+            public static int getTypeCode(String label) {
+                final Integer typeCode = TYPE_CODES.get(label);
+                return null != typeCode ? typeCode : -1;
+            }
+
+            /**
+             * Gets the type of the record data.
+             *
+             * @param typeCode the EXTH header type code.
+             * @return the value type, {@link ValueType#STRING} for unknown types.
+             */
+            public static ValueType getValueType(int typeCode) {
+                final ValueType valueType = typeCode >= 0 && typeCode < DENSE_TYPE_CODES
+                        ? VALUE_TYPES[typeCode] : null;
+                return null != valueType ? valueType : ValueType.STRING;
             }
         }
 
+        /**
+         * Type of EXTH record data.
+         */
+        public enum ValueType {
+            /**
+             * Text in the MOBI header encoding.
+             */
+            STRING,
+            /**
+             * Big endian unsigned integer, usually four bytes.
+             */
+            INT,
+            /**
+             * Binary data.
+             */
+            BINARY
+        }
+
         /**
          * Represents an EXTH header, including EXTH records.
+         * <p>
+         * Type code, data offset and data length of each record get indexed. If read lazily from a buffer, the
+         * header keeps the underlying buffer, the {@link #records} stay null and records get decoded on access.
+         * Otherwise, the header keeps a private copy of the record data.
          */
         public static class Header {
+            private static final Record[] NO_RECORDS = new Record[0];
+
             public String identifier;
             public int headerLength;
             public int recordCount;
             public Record[] records;
-            private Map<Integer, Record> recordMap;
+            private int[] typeCodes;
+            // Index of records sorted by type code, for lookup via binary search
+            private int[] sortedTypeCodes;
+            private int[] sortedRecordIndexes;
+            // Record data, in mapped file or copy read from stream
+            private ByteBuffer buffer;
+            private Charset encoding;
+            private int[] dataOffsets;
+            private int[] dataLengths;
 
             /**
              * Reads EXTH header and records.
@@ -324,35 +327,423 @@ public class MobiHeader {
              * @throws IOException on error.
              */
             public static Header read(DataInputStream is, Charset encoding) throws IOException {
+                return read(is, encoding, new ParseOptions());
+            }
+
+            /**
+             * Reads EXTH header and indexes records for lazy decoding.
+             * <p>
+             * Reads the EXTH record data into one array, record data gets decoded on access.
+             *
+             * @param is       the input stream.
+             * @param encoding the encoding charset
+             * @return the EXTH header, without decoded records.
+             * @throws IOException on error.
+             */
+            public static Header readLazy(DataInputStream is, Charset encoding) throws IOException {
+                return read(is, encoding, new ParseOptions().lazyExth(true));
+            }
+
+            /**
+             * Reads EXTH header and records selected by the parse options.
+             * <p>
+             * Reads the selected EXTH record data into one array, skipping other records.
+             *
+             * @param is       the input stream.
+             * @param encoding the encoding charset
+             * @param options  the parse options, for lazy decoding and EXTH record type selection.
+             * @return the EXTH header.
+             * @throws IOException on error.
+             */
+            public static Header read(DataInputStream is, Charset encoding, ParseOptions options)
+                    throws IOException {
+                final ParseListener listener = ParseEvents.listener(options, ParseEvents.EXTH_HEADER);
+                final long start = null != listener ? System.nanoTime() : 0;
                 Header header = new Header();
-                header.identifier = StreamHelper.readString(is, 4, StandardCharsets.US_ASCII); // EXTH
+                header.identifier = StreamHelper.readTag(is); // EXTH
                 if (!"EXTH".equals(header.identifier)) {
-                    throw new IllegalStateException(
+                    throw new MobiFormatException("exthHeader.identifier", 0,
                             "Expected EXTH header to start with identifier EXTH but got " + header.identifier);
                 }
                 header.headerLength = is.readInt();
-                header.recordCount = is.readInt();
-                header.records = new Record[header.recordCount];
-                header.recordMap = new HashMap<>(header.recordCount);
-                for (int i = 0; i < header.recordCount; i++) {
-                    final Record record = Record.read(is, encoding);
-                    header.records[i] = record;
-                    header.recordMap.put(record.typeCode, record);
+                final int recordCount = is.readInt();
+                if (options.isValidate()) {
+                    validateHeader(header.headerLength, recordCount, -1, options);
                 }
+
+                // Copy selected records as is, for indexing. The copy is bounded by the maximum EXTH length, also if
+                // not validating, as the header length is not trustworthy then.
+                final int maxLength = options.getMaxExthLength();
+                byte[] data = new byte[Math.min(Math.max(header.headerLength - 12 /* identifier, length, count */, 0),
+                        maxLength)];
+                int pos = 0;
+                int selectedCount = 0;
+                long consumed = 0;
+                for (int i = 0; i < recordCount; i++) {
+                    final int typeCode = is.readInt();
+                    final int length = is.readInt();
+                    if (options.isValidate()) {
+                        validateRecord(i, length, consumed, data.length);
+                        consumed += length;
+                    }
+                    if (!options.isExthRecordTypeSelected(typeCode)) {
+                        is.skipBytes(length - 8 /* size of type and length */);
+                        continue;
+                    }
+                    if (pos + length > data.length) {
+                        if ((long) pos + length > maxLength) {
+                            throw new MobiFormatException("exthHeader.records[" + i + "].length", length,
+                                    "EXTH record length " + length + " exceeds maximum EXTH length of "
+                                            + maxLength + " bytes");
+                        }
+                        data = Arrays.copyOf(data, (int) Math.min(Math.max(pos + length, data.length * 2L),
+                                maxLength));
+                    }
+                    ByteBuffer.wrap(data).putInt(pos, typeCode).putInt(pos + 4, length);
+                    is.readFully(data, pos + 8, length - 8 /* size of type and length */);
+                    pos += length;
+                    selectedCount++;
+                }
+                header.recordCount = selectedCount;
+                header.index(ByteBuffer.wrap(data), 0, encoding, null);
+                if (!options.isLazyExth()) {
+                    header.decodeRecords();
+                }
+
                 // Null bytes to pad the EXTH header to a multiple of four bytes (none if the header is already
                 // a multiple of four). This padding is not included in the EXTH header length.
                 is.skipBytes(4 - header.headerLength % 4);
+                if (null != listener) {
+                    listener.exthHeaderRead(header.headerLength, header.recordCount, System.nanoTime() - start);
+                }
+                return header;
+            }
+
+            /**
+             * Reads EXTH header and records from buffer.
+             *
+             * @param buffer   the buffer.
+             * @param offset   the absolute offset of the EXTH header.
+             * @param encoding the encoding charset
+             * @return the EXTH header including records.
+             */
+            public static Header read(ByteBuffer buffer, int offset, Charset encoding) {
+                return read(buffer, offset, encoding, new ParseOptions());
+            }
+
+            /**
+             * Reads EXTH header and indexes records for lazy decoding.
+             * <p>
+             * The header keeps a reference to the buffer, for decoding records on access.
+             *
+             * @param buffer   the buffer.
+             * @param offset   the absolute offset of the EXTH header.
+             * @param encoding the encoding charset
+             * @return the EXTH header, without decoded records.
+             */
+            public static Header readLazy(ByteBuffer buffer, int offset, Charset encoding) {
+                return read(buffer, offset, encoding, new ParseOptions().lazyExth(true));
+            }
+
+            /**
+             * Reads EXTH header and records selected by the parse options from buffer.
+             * <p>
+             * If read lazily, the header keeps a reference to the buffer, for decoding records on access. Otherwise,
+             * the selected record data gets copied, so the header does not keep e.g. a mapped file alive.
+             *
+             * @param buffer   the buffer.
+             * @param offset   the absolute offset of the EXTH header.
+             * @param encoding the encoding charset
+             * @param options  the parse options, for lazy decoding and EXTH record type selection.
+             * @return the EXTH header.
+             */
+            public static Header read(ByteBuffer buffer, int offset, Charset encoding, ParseOptions options) {
+                final ParseListener listener = ParseEvents.listener(options, ParseEvents.EXTH_HEADER);
+                final long start = null != listener ? System.nanoTime() : 0;
+                if (options.isValidate() && (offset < 0 || offset > buffer.limit() - 12)) {
+                    throw new MobiFormatException("exthHeader.offset", offset, "EXTH header at offset " + offset
+                            + " exceeds file length of " + buffer.limit() + " bytes");
+                }
+                Header header = new Header();
+                header.identifier = StringPool.readTag(buffer, offset); // EXTH
+                if (!"EXTH".equals(header.identifier)) {
+                    throw new MobiFormatException("exthHeader.identifier", 0,
+                            "Expected EXTH header to start with identifier EXTH but got " + header.identifier);
+                }
+                header.headerLength = buffer.getInt(offset + 4);
+                header.recordCount = buffer.getInt(offset + 8);
+                if (options.isValidate()) {
+                    validateHeader(header.headerLength, header.recordCount, buffer.limit() - offset, options);
+                }
+                header.index(buffer, offset + 12, encoding, options);
+                if (!options.isLazyExth()) {
+                    header.copyRecordData(options.getMaxExthLength());
+                    header.decodeRecords();
+                }
+                if (null != listener) {
+                    listener.exthHeaderRead(header.headerLength, header.recordCount, System.nanoTime() - start);
+                }
                 return header;
             }
 
+            private void index(ByteBuffer buffer, int recordOffset, Charset encoding, ParseOptions options) {
+                this.buffer = buffer;
+                this.encoding = encoding;
+                typeCodes = new int[recordCount];
+                dataOffsets = new int[recordCount];
+                dataLengths = new int[recordCount];
+                int selectedCount = 0;
+                final boolean validate = null != options && options.isValidate();
+                final int recordsOffset = recordOffset;
+                for (int i = 0; i < recordCount; i++) {
+                    final int typeCode = buffer.getInt(recordOffset);
+                    final int length = buffer.getInt(recordOffset + 4);
+                    if (validate) {
+                        validateRecord(i, length, recordOffset - recordsOffset, headerLength - 12);
+                    }
+                    if (null == options || options.isExthRecordTypeSelected(typeCode)) {
+                        typeCodes[selectedCount] = typeCode;
+                        dataOffsets[selectedCount] = recordOffset + 8;
+                        dataLengths[selectedCount] = length - 8; /* size of type and length */
+                        selectedCount++;
+                    }
+                    recordOffset += length;
+                }
+                if (selectedCount < recordCount) {
+                    recordCount = selectedCount;
+                    typeCodes = Arrays.copyOf(typeCodes, selectedCount);
+                    dataOffsets = Arrays.copyOf(dataOffsets, selectedCount);
+                    dataLengths = Arrays.copyOf(dataLengths, selectedCount);
+                }
+                buildIndex();
+            }
+
+            /**
+             * Checks header length and record count before allocating.
+             *
+             * @param available the bytes available from the header offset, or -1 if unknown.
+             */
+            private static void validateHeader(int headerLength, int recordCount, int available,
+                                               ParseOptions options) {
+                final int maxLength = available >= 0 ? Math.min(options.getMaxExthLength(), available)
+                        : options.getMaxExthLength();
+                if (headerLength < 12 || headerLength > maxLength) {
+                    throw new MobiFormatException("exthHeader.headerLength", headerLength, "EXTH header length "
+                            + headerLength + " not in range [12," + maxLength + "]");
+                }
+                if (recordCount < 0 || recordCount > options.getMaxExthRecords()
+                        || recordCount * 8L > headerLength - 12) {
+                    throw new MobiFormatException("exthHeader.recordCount", recordCount, "EXTH record count "
+                            + recordCount + " not in range [0," + Math.min(options.getMaxExthRecords(),
+                            (headerLength - 12) / 8) + "]");
+                }
+            }
+
+            /**
+             * Checks that a record lies within the EXTH header.
+             *
+             * @param position      the record position, relative to the first record.
+             * @param recordsLength the length of all records.
+             */
+            private static void validateRecord(int index, int length, long position, int recordsLength) {
+                if (length < 8 || length > recordsLength - position) {
+                    throw new MobiFormatException("exthHeader.records[" + index + "].length", length,
+                            "EXTH record length " + length + " not in range [8," + (recordsLength - position) + "]");
+                }
+            }
+
+            /**
+             * Replaces the buffer by a copy of the record data, rebasing the data offsets.
+             */
+            private void copyRecordData(int maxLength) {
+                long length = 0;
+                for (int i = 0; i < recordCount; i++) {
+                    length += dataLengths[i];
+                }
+                if (length > maxLength) {
+                    throw new MobiFormatException("exthHeader.headerLength", length, "EXTH record data of " + length
+                            + " bytes exceeds maximum EXTH length of " + maxLength + " bytes");
+                }
+                final byte[] data = new byte[(int) length];
+                final ByteBuffer source = buffer.duplicate();
+                int pos = 0;
+                for (int i = 0; i < recordCount; i++) {
+                    ((Buffer) source).limit(dataOffsets[i] + dataLengths[i]).position(dataOffsets[i]);
+                    source.get(data, pos, dataLengths[i]);
+                    dataOffsets[i] = pos;
+                    pos += dataLengths[i];
+                }
+                buffer = ByteBuffer.wrap(data);
+            }
+
+            private void decodeRecords() {
+                final Record[] decoded = new Record[recordCount];
+                for (int i = 0; i < recordCount; i++) {
+                    decoded[i] = decodeRecord(i);
+                }
+                records = decoded;
+            }
+
+            private void buildIndex() {
+                // Sort by type code, and by record index for same type code
+                final long[] keys = new long[recordCount];
+                for (int i = 0; i < recordCount; i++) {
+                    keys[i] = ((long) typeCodes[i] << 32) | i;
+                }
+                Arrays.sort(keys);
+                sortedTypeCodes = new int[recordCount];
+                sortedRecordIndexes = new int[recordCount];
+                for (int i = 0; i < recordCount; i++) {
+                    sortedTypeCodes[i] = (int) (keys[i] >> 32);
+                    sortedRecordIndexes[i] = (int) keys[i];
+                }
+            }
+
+            /**
+             * Finds the first position of given type code in the sorted index.
+             *
+             * @param recordTypeCode the record type code.
+             * @return the position, or -1 if not found.
+             */
+            private int findFirst(int recordTypeCode) {
+                int low = 0;
+                int high = sortedTypeCodes.length;
+                while (low < high) {
+                    final int mid = (low + high) >>> 1;
+                    if (sortedTypeCodes[mid] < recordTypeCode) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                return low < sortedTypeCodes.length && sortedTypeCodes[low] == recordTypeCode ? low : -1;
+            }
+
             /**
              * Gets an EXTH records by record type code.
+             * <p>
+             * If the type code occurs multiple times, e.g. for several authors, returns the first record.
              *
              * @param recordTypeCode the record type code, e.g., 104 for ISBN.
              * @return the record or null if not available.
+             * @see #getRecordsByTypeCode(int)
              */
             public Record getRecordByTypeCode(int recordTypeCode) {
-                return recordMap.get(recordTypeCode);
+                final int pos = findFirst(recordTypeCode);
+                return pos < 0 ? null : getRecord(sortedRecordIndexes[pos]);
+            }
+
+            /**
+             * Gets all EXTH records of given record type code, in file order.
+             *
+             * @param recordTypeCode the record type code, e.g., 100 for AUTHOR.
+             * @return the records, or an empty array if not available.
+             */
+            public Record[] getRecordsByTypeCode(int recordTypeCode) {
+                final int first = findFirst(recordTypeCode);
+                if (first < 0) {
+                    return NO_RECORDS;
+                }
+                int end = first + 1;
+                while (end < sortedTypeCodes.length && sortedTypeCodes[end] == recordTypeCode) {
+                    end++;
+                }
+                final Record[] result = new Record[end - first];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = getRecord(sortedRecordIndexes[first + i]);
+                }
+                return result;
+            }
+
+            /**
+             * Gets an EXTH record by position.
+             * <p>
+             * If read lazily, decodes the record on each invocation.
+             *
+             * @param index the record index, from 0 to {@link #recordCount} - 1.
+             * @return the record.
+             */
+            public Record getRecord(int index) {
+                return null != records ? records[index] : decodeRecord(index);
+            }
+
+            private Record decodeRecord(int index) {
+                Record record = new Record();
+                record.typeCode = typeCodes[index];
+                record.typeLabel = RecordType.getLabel(record.typeCode);
+                record.length = dataLengths[index] + 8;
+                record.data = Record.canonicalize(record.typeCode,
+                        BufferHelper.readString(buffer, dataOffsets[index], dataLengths[index], encoding));
+                return record;
+            }
+
+            /**
+             * Gets the value of the first EXTH record of a type as big endian integer, decoded from the record bytes.
+             * <p>
+             * Use for record types of {@link ValueType#INT}, such as {@link RecordType#COVER_OFFSET}.
+             * Decodes at most the first four bytes.
+             *
+             * @param recordTypeCode the record type code.
+             * @param defaultValue   the value if the record is not available.
+             * @return the value, or the default value.
+             */
+            public int getInt(int recordTypeCode, int defaultValue) {
+                final int pos = findFirst(recordTypeCode);
+                if (pos < 0) {
+                    return defaultValue;
+                }
+                final int index = sortedRecordIndexes[pos];
+                int value = 0;
+                for (int i = 0; i < dataLengths[index] && i < 4; i++) {
+                    value = (value << 8) | (buffer.get(dataOffsets[index] + i) & 0xFF);
+                }
+                return value;
+            }
+
+            /**
+             * Gets the value of the first EXTH record of a type as big endian integer.
+             *
+             * @param recordTypeCode the record type code.
+             * @return the value, or -1 (0xFFFFFFFF) if the record is not available.
+             * @see #getInt(int, int)
+             */
+            public int getInt(int recordTypeCode) {
+                return getInt(recordTypeCode, -1);
+            }
+
+            /**
+             * Gets the data of the first EXTH record of a type.
+             *
+             * @param recordTypeCode the record type code.
+             * @return a copy of the record data, or null if the record is not available.
+             */
+            public byte[] getBytes(int recordTypeCode) {
+                final int pos = findFirst(recordTypeCode);
+                if (pos < 0) {
+                    return null;
+                }
+                final int index = sortedRecordIndexes[pos];
+                final byte[] data = new byte[dataLengths[index]];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = buffer.get(dataOffsets[index] + i);
+                }
+                return data;
+            }
+
+            /**
+             * Gets the data of the first EXTH record of a type as string, decoded using the MOBI header encoding.
+             *
+             * @param recordTypeCode the record type code.
+             * @return the string, or null if the record is not available.
+             */
+            public String getString(int recordTypeCode) {
+                final int pos = findFirst(recordTypeCode);
+                if (pos < 0) {
+                    return null;
+                }
+                final int index = sortedRecordIndexes[pos];
+                return Record.canonicalize(recordTypeCode,
+                        BufferHelper.readString(buffer, dataOffsets[index], dataLengths[index], encoding));
             }
 
             @Override
@@ -367,7 +758,18 @@ public class MobiHeader {
         }
     }
 
+    /**
+     * The minimum MOBI header length covering all fixed fields, up to the EXTH flags.
+     */
+    static final int MIN_HEADER_LENGTH = 0x74;
+    /**
+     * The maximum MOBI header length accepted when reading only the header bytes, far above known lengths of
+     * up to 0x108 bytes.
+     */
+    static final int MAX_HEADER_LENGTH = 0x10000;
+
     public PalmDatabase.Header palmDatabaseHeader;
+    public int headerRecordIndex; // PDB record containing this header, e.g. the KF8 boundary of hybrid files
     public CompressionType compression;
     public int textLength;
     public short recordCount;
@@ -397,6 +799,8 @@ public class MobiHeader {
     public int huffmanTableOffset;
     public int huffmanTableLength;
     public boolean hasExth;
+    public int extraRecordDataFlags;
+    public int ncxIndex = Index.NO_INDEX;
     public Exth.Header exthHeader;
 
 //    int drmOffset;
@@ -405,11 +809,26 @@ public class MobiHeader {
 //    int drmFlags;
 
     public static MobiHeader read(DataInputStream is) throws IOException {
+        return read(is, new ParseOptions());
+    }
+
+    /**
+     * Reads MOBI header data from stream.
+     *
+     * @param is      the input stream.
+     * @param options the parse options.
+     * @return the MOBI header.
+     * @throws IOException on error.
+     */
+    public static MobiHeader read(DataInputStream is, ParseOptions options) throws IOException {
         final MobiHeader header = new MobiHeader();
-        header.palmDatabaseHeader = PalmDatabase.Header.read(is);
+        header.palmDatabaseHeader = PalmDatabase.Header.read(is, options);
+        final ParseListener listener = ParseEvents.listener(options, ParseEvents.MOBI_HEADER);
+        final long start = null != listener ? System.nanoTime() : 0;
 
         // http://wiki.mobileread.com/wiki/MOBI#PalmDOC_Header
-        header.compression = CompressionType.convert(is.readShort());
+        header.compression = convert("compression", is.readShort(),
+                code -> CompressionType.convert((short) code), options);
         is.skipBytes(2);
         header.textLength = is.readInt();
         header.recordCount = is.readShort();
@@ -418,20 +837,13 @@ public class MobiHeader {
         is.skipBytes(2);
 
         // http://wiki.mobileread.com/wiki/MOBI#MOBI_Header
-        header.identifier = StreamHelper.readString(is, 4, StandardCharsets.US_ASCII);
+        header.identifier = StreamHelper.readTag(is);
         header.headerLength = is.readInt();
-        header.mobiType = MobiType.convert(is.readInt());
-        int encoding = is.readInt();
-        switch (encoding) {
-            case 1252:
-                header.encoding = Charset.forName("CP1252");
-                break;
-            case 65001:
-                header.encoding = StandardCharsets.UTF_8;
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported encoding type " + encoding);
+        if (options.isValidate()) {
+            validateMobiHeader(header, 0, -1);
         }
+        header.mobiType = convert("mobiType", is.readInt(), MobiType::convert, options);
+        header.encoding = convert("encoding", is.readInt(), MobiHeader::convertEncoding, options);
         header.uniqueId = is.readInt();
         header.fileVersion = is.readInt();
         header.ortographicIndex = is.readInt();
@@ -457,35 +869,284 @@ public class MobiHeader {
         header.huffmanTableOffset = is.readInt();
         header.huffmanTableLength = is.readInt();
         header.hasExth = ((is.readInt() & 0x40) != 0);
-        is.skipBytes(header.headerLength - 132 + 16);
+        if (header.headerLength >= 0xE4) {
+            is.skipBytes(0xF2 - 132);
+            header.extraRecordDataFlags = is.readUnsignedShort();
+            if (header.headerLength >= 0xE8) {
+                header.ncxIndex = is.readInt();
+                is.skipBytes(header.headerLength + 16 - 0xF8);
+            } else {
+                is.skipBytes(header.headerLength + 16 - 0xF4);
+            }
+        } else {
+            is.skipBytes(header.headerLength - 132 + 16);
+        }
 //        header.drmOffset = is.readInt();
 //        header.drmCount = is.readInt();
 //        header.drmSize = is.readInt();
 //        header.drmFlags = is.readInt();
+        if (null != listener) {
+            listener.mobiHeaderRead(16 + header.headerLength, header.headerRecordIndex, System.nanoTime() - start);
+        }
 
         if (header.hasExth) {
-            header.exthHeader = Exth.Header.read(is, header.encoding);
+            header.exthHeader = Exth.Header.read(is, header.encoding, options);
         }
 
         return header;
     }
 
+    /**
+     * Reads MOBI header data from a file, by memory mapping the file.
+     *
+     * @param path the MOBI file.
+     * @return the MOBI header.
+     * @throws IOException on error.
+     */
+    public static MobiHeader read(Path path) throws IOException {
+        return read(path, new ParseOptions());
+    }
+
+    /**
+     * Reads MOBI header data from a file, by memory mapping the file.
+     *
+     * @param path    the MOBI file.
+     * @param options the parse options.
+     * @return the MOBI header.
+     * @throws IOException on error.
+     */
+    public static MobiHeader read(Path path, ParseOptions options) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), options);
+        }
+    }
+
+    /**
+     * Reads MOBI header data from a file asynchronously.
+     *
+     * @param path the MOBI file.
+     * @return the future MOBI header.
+     * @see #readAsync(Path, ParseOptions)
+     */
+    public static CompletableFuture<MobiHeader> readAsync(Path path) {
+        return readAsync(path, new ParseOptions());
+    }
+
+    /**
+     * Reads MOBI header data from a file asynchronously, using an {@link java.nio.channels.AsynchronousFileChannel}.
+     * <p>
+     * Only the header bytes get read. The file size is used as file length, e.g. for the length of the last PDB
+     * record when using {@link ParseOptions#compactRecords(boolean)}. The future completes on a thread of the channel's thread pool, and completes exceptionally on I/O
+     * or format errors.
+     *
+     * @param path    the MOBI file.
+     * @param options the parse options.
+     * @return the future MOBI header.
+     */
+    public static CompletableFuture<MobiHeader> readAsync(Path path, ParseOptions options) {
+        return AsyncMobiHeaderReader.read(path, options);
+    }
+
+    /**
+     * Reads MOBI header data from a buffer containing the MOBI file, decoding fields by absolute offset.
+     * <p>
+     * The buffer position and limit are ignored, the file is expected to start at index 0.
+     *
+     * @param buffer the buffer, e.g. a mapped MOBI file.
+     * @return the MOBI header.
+     * @see #read(DataInputStream)
+     */
+    public static MobiHeader read(ByteBuffer buffer) {
+        return read(buffer, new ParseOptions());
+    }
+
+    /**
+     * Reads MOBI header data from a buffer containing the MOBI file, decoding fields by absolute offset.
+     * <p>
+     * If EXTH records get read lazily, the header keeps a reference to the buffer. Otherwise, the EXTH record data
+     * gets copied, so the header does not keep a mapped file alive.
+     *
+     * @param buffer  the buffer, e.g. a mapped MOBI file.
+     * @param options the parse options.
+     * @return the MOBI header.
+     */
+    public static MobiHeader read(ByteBuffer buffer, ParseOptions options) {
+        return read(buffer, buffer.limit(), options);
+    }
+
+    /**
+     * Reads MOBI header data from a buffer containing a prefix of the MOBI file, e.g. only the header bytes.
+     *
+     * @param buffer     the buffer, containing at least record 0 up to the end of the EXTH header.
+     * @param fileLength the file length, or -1 if unknown.
+     * @param options    the parse options.
+     * @return the MOBI header.
+     */
+    static MobiHeader read(ByteBuffer buffer, int fileLength, ParseOptions options) {
+        buffer = BufferHelper.bigEndian(buffer);
+        final MobiHeader header = new MobiHeader();
+        header.palmDatabaseHeader = PalmDatabase.Header.read(buffer, fileLength, options);
+        readMobiHeader(buffer, PalmDatabase.Header.getLength(header.palmDatabaseHeader.numRecords), header, options);
+        return header;
+    }
+
+    /**
+     * Reads MOBI header data from a PDB record other than record 0, e.g. the KF8 header of a hybrid file.
+     * <p>
+     * Seeks directly to the record, using the record entry in the buffer.
+     *
+     * @param buffer             the buffer, e.g. a mapped MOBI file.
+     * @param palmDatabaseHeader the PDB header, shared with the returned MOBI header.
+     * @param recordIndex        the index of the PDB record containing the header.
+     * @param options            the parse options.
+     * @return the MOBI header.
+     * @throws IllegalArgumentException if the record index is out of range.
+     * @see MobiFile
+     */
+    public static MobiHeader read(ByteBuffer buffer, PalmDatabase.Header palmDatabaseHeader, int recordIndex,
+                                  ParseOptions options) {
+        if (recordIndex < 0 || recordIndex >= (palmDatabaseHeader.numRecords & 0xFFFF)) {
+            throw new IllegalArgumentException("Expected header record index in range [0,"
+                    + (palmDatabaseHeader.numRecords & 0xFFFF) + ") but got " + recordIndex);
+        }
+        buffer = BufferHelper.bigEndian(buffer);
+        final MobiHeader header = new MobiHeader();
+        header.palmDatabaseHeader = palmDatabaseHeader;
+        header.headerRecordIndex = recordIndex;
+        readMobiHeader(buffer, buffer.getInt(PalmDatabase.Header.LENGTH + recordIndex * PalmDatabase.Record.LENGTH),
+                header, options);
+        return header;
+    }
+
+    private static void readMobiHeader(ByteBuffer buffer, int offset, MobiHeader header, ParseOptions options) {
+        final ParseListener listener = ParseEvents.listener(options, ParseEvents.MOBI_HEADER);
+        final long start = null != listener ? System.nanoTime() : 0;
+
+        if (options.isValidate() && (offset < 0 || offset > buffer.limit() - 24)) {
+            throw new MobiFormatException("records[" + header.headerRecordIndex + "].dataOffset", offset,
+                    "MOBI header at offset " + offset + " exceeds file length of " + buffer.limit() + " bytes");
+        }
+
+        // http://wiki.mobileread.com/wiki/MOBI#PalmDOC_Header
+        header.compression = convert("compression", buffer.getShort(offset),
+                code -> CompressionType.convert((short) code), options);
+        header.textLength = buffer.getInt(offset + 4);
+        header.recordCount = buffer.getShort(offset + 8);
+        header.recordSize = buffer.getShort(offset + 10);
+        header.encryptionType = buffer.getShort(offset + 12);
+
+        // http://wiki.mobileread.com/wiki/MOBI#MOBI_Header
+        final int mobiOffset = offset + 16;
+        header.identifier = StringPool.readTag(buffer, mobiOffset);
+        header.headerLength = buffer.getInt(mobiOffset + 4);
+        if (options.isValidate()) {
+            validateMobiHeader(header, mobiOffset, buffer.limit());
+        }
+        header.mobiType = convert("mobiType", buffer.getInt(mobiOffset + 8), MobiType::convert, options);
+        header.encoding = convert("encoding", buffer.getInt(mobiOffset + 12), MobiHeader::convertEncoding, options);
+        header.uniqueId = buffer.getInt(mobiOffset + 16);
+        header.fileVersion = buffer.getInt(mobiOffset + 20);
+        header.ortographicIndex = buffer.getInt(mobiOffset + 24);
+        header.inflectionIndex = buffer.getInt(mobiOffset + 28);
+        header.indexNames = buffer.getInt(mobiOffset + 32);
+        header.indexKeys = buffer.getInt(mobiOffset + 36);
+        for (int i = 0; i < header.extraIndex.length; i++) {
+            header.extraIndex[i] = buffer.getInt(mobiOffset + 40 + i * 4);
+        }
+        header.firstNonBookIndex = buffer.getInt(mobiOffset + 64);
+        header.fullNameOffset = buffer.getInt(mobiOffset + 68);
+        header.fullNameLength = buffer.getInt(mobiOffset + 72);
+        header.locale = buffer.getInt(mobiOffset + 76);
+        header.inputLanguage = buffer.getInt(mobiOffset + 80);
+        header.outputLanguage = buffer.getInt(mobiOffset + 84);
+        header.minVersion = buffer.getInt(mobiOffset + 88);
+        header.firstImageIndex = buffer.getInt(mobiOffset + 92);
+        header.huffmanRecordOffset = buffer.getInt(mobiOffset + 96);
+        header.huffmanRecordCount = buffer.getInt(mobiOffset + 100);
+        header.huffmanTableOffset = buffer.getInt(mobiOffset + 104);
+        header.huffmanTableLength = buffer.getInt(mobiOffset + 108);
+        header.hasExth = ((buffer.getInt(mobiOffset + 112) & 0x40) != 0);
+        if (header.headerLength >= 0xE4) {
+            header.extraRecordDataFlags = buffer.getShort(offset + 0xF2) & 0xFFFF;
+        }
+        if (header.headerLength >= 0xE8) {
+            header.ncxIndex = buffer.getInt(offset + 0xF4);
+        }
+        if (null != listener) {
+            listener.mobiHeaderRead(16 + header.headerLength, header.headerRecordIndex, System.nanoTime() - start);
+        }
+
+        if (header.hasExth) {
+            final int exthOffset = mobiOffset + header.headerLength;
+            header.exthHeader = Exth.Header.read(buffer, exthOffset, header.encoding, options);
+        }
+    }
+
+    /**
+     * Checks identifier and header length, so that all fixed fields lie within the header and the file.
+     *
+     * @param mobiOffset the offset of the MOBI header.
+     * @param fileLength the file length, or -1 if unknown.
+     */
+    private static void validateMobiHeader(MobiHeader header, int mobiOffset, int fileLength) {
+        if (!"MOBI".equals(header.identifier)) {
+            throw new MobiFormatException("identifier", 0, "Expected identifier MOBI but got " + header.identifier);
+        }
+        if (header.headerLength < MIN_HEADER_LENGTH
+                || (fileLength >= 0 && header.headerLength > fileLength - mobiOffset)) {
+            throw new MobiFormatException("headerLength", header.headerLength, "MOBI header length "
+                    + header.headerLength + " not in range [" + MIN_HEADER_LENGTH + ","
+                    + (fileLength >= 0 ? fileLength - mobiOffset : Integer.MAX_VALUE) + "]");
+        }
+    }
+
+    /**
+     * Converts a type code, throwing a {@link MobiFormatException} for unknown codes if validating.
+     */
+    private static <T> T convert(String field, int code, IntFunction<T> converter, ParseOptions options) {
+        try {
+            return converter.apply(code);
+        } catch (IllegalArgumentException ex) {
+            if (options.isValidate()) {
+                final MobiFormatException formatException = new MobiFormatException(field, code, ex.getMessage());
+                formatException.initCause(ex);
+                throw formatException;
+            }
+            throw ex;
+        }
+    }
+
+    static Charset convertEncoding(int encoding) {
+        switch (encoding) {
+            case 1252:
+                return Charset.forName("CP1252");
+            case 65001:
+                return StandardCharsets.UTF_8;
+            default:
+                throw new IllegalArgumentException("Unsupported encoding type " + encoding);
+        }
+    }
+
     public enum CompressionType {
-        NO_COMPRESSION,
-        OLD_MOBIPOCKET_COMPRESSION,
-        HUFF_CDIC_COMPRESSION;
+        NO_COMPRESSION(1),
+        OLD_MOBIPOCKET_COMPRESSION(2),
+        HUFF_CDIC_COMPRESSION(17480);
+
+        private static final CompressionType[] VALUES = values();
+
+        final int code;
+
+        CompressionType(int code) {
+            this.code = code;
+        }
 
         public static CompressionType convert(short s) {
-            switch (s) {
-                case 1:
-                    return NO_COMPRESSION;
-                case 2:
-                    return OLD_MOBIPOCKET_COMPRESSION;
-                case 17480:
-                    return HUFF_CDIC_COMPRESSION;
-                default:
-                    throw new IllegalArgumentException("Invalid input : " + s);
+            for (CompressionType compressionType : VALUES) {
+                if (compressionType.code == s) {
+                    return compressionType;
+                }
             }
+            throw new IllegalArgumentException("Invalid input : " + s);
         }
     }
 
@@ -505,6 +1166,19 @@ public class MobiHeader {
         TEXT(517),
         HTML(518);
 
+        private static final MobiType[] BY_CODE;
+
+        static {
+            int maxCode = 0;
+            for (MobiType mobiType : values()) {
+                maxCode = Math.max(maxCode, mobiType.code);
+            }
+            BY_CODE = new MobiType[maxCode + 1];
+            for (MobiType mobiType : values()) {
+                BY_CODE[mobiType.code] = mobiType;
+            }
+        }
+
         final int code;
 
         MobiType(int code) {
@@ -519,39 +1193,11 @@ public class MobiHeader {
          * @return the enum
          */
         static MobiType convert(int code) {
-            switch (code) {
-                case 2:
-                    return MOBIPOCKET_BOOK;
-                case 3:
-                    return PALM_DOC_BOOK;
-                case 4:
-                    return AUDIO;
-                case 232:
-                    return MOBIPOCKET_GENERATED_BY_KINDELGEN_1_2;
-                case 248:
-                    return KF8_GENERATED_BY_KINDLEGEN_2;
-                case 257:
-                    return NEWS;
-                case 258:
-                    return NEWS_FEED;
-                case 259:
-                    return NEWS_MAGAZINE;
-                case 513:
-                    return PICS;
-                case 514:
-                    return WORD;
-                case 515:
-                    return XLS;
-                case 516:
-                    return PPT;
-                case 517:
-                    return TEXT;
-                case 518:
-                    return HTML;
-
-                default:
-                    throw new IllegalArgumentException("Illegal type code " + code);
+            final MobiType mobiType = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+            if (null == mobiType) {
+                throw new IllegalArgumentException("Illegal type code " + code);
             }
+            return mobiType;
         }
     }
 
@@ -559,6 +1205,7 @@ public class MobiHeader {
     public String toString() {
         return "MobiHeader{" +
                 "palmDatabaseHeader=" + palmDatabaseHeader +
+                ", headerRecordIndex=" + headerRecordIndex +
                 ", compression=" + compression +
                 ", textLength=" + textLength +
                 ", recordCount=" + recordCount +
@@ -588,6 +1235,8 @@ public class MobiHeader {
                 ", huffmanTableOffset=" + huffmanTableOffset +
                 ", huffmanTableLength=" + huffmanTableLength +
                 ", hasExth=" + hasExth +
+                ", extraRecordDataFlags=" + extraRecordDataFlags +
+                ", ncxIndex=" + ncxIndex +
                 ", exthHeader=" + exthHeader +
                 '}';
     }
@@ -0,0 +1,367 @@
+package de.m3y.mobi.core;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches MOBI headers by file path, size and last modified time.
+ * <p>
+ * Parsed headers are kept in a size bounded in-memory LRU tier. Optionally, the raw header bytes
+ * (PDB header, record entries if not skipped, and record 0 up to the end of the EXTH header) get appended
+ * to a cache file, so headers of unchanged files get parsed from the cache file without reading the MOBI file.
+ * <p>
+ * The cache file is append only, an entry for a changed MOBI file supersedes the previous entry. When opening,
+ * the cache file gets compacted if superseded entries outnumber the current entries.
+ * Cached headers are shared, and must not be modified. Headers parsed from the cache file use the MOBI file size
+ * stored with the entry as file length, e.g. for the length of the last PDB record.
+ * <p>
+ * Example:
+ * <code>
+ * try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, new ParseOptions().skipRecords(true), 10000)) {
+ * final MobiHeader header = cache.read(path);
+ * ...
+ * }
+ * </code>
+ */
+public class MobiHeaderCache implements Closeable {
+    private static final int MAGIC = 0x4D4F4243; // MOBC
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_LENGTH = 8;
+    private static final byte FLAG_RECORD_ENTRIES = 1;
+
+    private final ParseOptions options;
+    private final Map<Key, MobiHeader> memory;
+    private final Map<String, Entry> index = new HashMap<>();
+    private final FileChannel channel;
+    private long channelEnd;
+    private int supersededEntries; // Found when loading the index
+
+    /**
+     * Creates an in-memory cache.
+     *
+     * @param options    the parse options for reading headers.
+     * @param maxEntries the maximum number of headers kept in memory.
+     */
+    public MobiHeaderCache(ParseOptions options, int maxEntries) {
+        this(options, maxEntries, null);
+    }
+
+    private MobiHeaderCache(ParseOptions options, final int maxEntries, FileChannel channel) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Expected maxEntries >= 0 but got " + maxEntries);
+        }
+        this.options = options;
+        this.channel = channel;
+        memory = new LinkedHashMap<Key, MobiHeader>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, MobiHeader> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Opens a cache backed by a cache file, creating the file if it does not exist.
+     *
+     * @param cacheFile  the cache file.
+     * @param options    the parse options for reading headers.
+     * @param maxEntries the maximum number of headers kept in memory.
+     * @return the cache.
+     * @throws IOException on error.
+     */
+    public static MobiHeaderCache open(Path cacheFile, ParseOptions options, int maxEntries) throws IOException {
+        final MobiHeaderCache cache = openChannel(cacheFile, options, maxEntries);
+        if (cache.supersededEntries <= cache.index.size()) {
+            return cache;
+        }
+        final Path compacted = cacheFile.resolveSibling(cacheFile.getFileName() + ".compact");
+        try {
+            cache.compact(compacted);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(compacted);
+            throw ex;
+        } finally {
+            cache.close();
+        }
+        Files.move(compacted, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return openChannel(cacheFile, options, maxEntries);
+    }
+
+    private static MobiHeaderCache openChannel(Path cacheFile, ParseOptions options, int maxEntries)
+            throws IOException {
+        final FileChannel channel = FileChannel.open(cacheFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MobiHeaderCache cache = new MobiHeaderCache(options, maxEntries, channel);
+            cache.loadIndex();
+            return cache;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the MOBI header of a file, using the cache if the file did not change.
+     *
+     * @param path the MOBI file.
+     * @return the MOBI header.
+     * @throws IOException on error.
+     */
+    public MobiHeader read(Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final Key key = new Key(path.toAbsolutePath().normalize().toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+
+        MobiHeader header;
+        synchronized (memory) {
+            header = memory.get(key);
+        }
+        if (null != header) {
+            return header;
+        }
+
+        final byte[] cached = readEntry(key);
+        if (null != cached) {
+            header = decode(cached, (int) Math.min(key.size, Integer.MAX_VALUE));
+        } else {
+            final ByteBuffer buffer;
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            }
+            header = MobiHeader.read(buffer, options);
+            writeEntry(key, encode(buffer, header));
+        }
+        synchronized (memory) {
+            memory.put(key, header);
+        }
+        return header;
+    }
+
+    /**
+     * Copies the header bytes required for parsing.
+     */
+    private byte[] encode(ByteBuffer buffer, MobiHeader header) {
+        final int numRecords = header.palmDatabaseHeader.numRecords & 0xFFFF;
+        final boolean recordEntries = !options.isSkipRecords();
+        final int record0 = PalmDatabase.Header.getLength(numRecords);
+        int record0Length = 16 + header.headerLength;
+        if (null != header.exthHeader) {
+            record0Length += header.exthHeader.headerLength;
+        }
+        record0Length = Math.min(record0Length, buffer.limit() - record0);
+
+        final int pdbLength = PalmDatabase.Header.LENGTH
+                + (recordEntries ? numRecords * PalmDatabase.Record.LENGTH : 0);
+        final byte[] data = new byte[1 + pdbLength + record0Length];
+        data[0] = recordEntries ? FLAG_RECORD_ENTRIES : 0;
+        for (int i = 0; i < pdbLength; i++) {
+            data[1 + i] = buffer.get(i);
+        }
+        for (int i = 0; i < record0Length; i++) {
+            data[1 + pdbLength + i] = buffer.get(record0 + i);
+        }
+        return data;
+    }
+
+    /**
+     * Parses a header from cached bytes, restoring the record 0 offset.
+     */
+    private MobiHeader decode(byte[] data, int fileLength) {
+        final boolean recordEntries = (data[0] & FLAG_RECORD_ENTRIES) != 0;
+        final int numRecords = ByteBuffer.wrap(data).getShort(1 + 76) & 0xFFFF;
+        final int pdbLength = PalmDatabase.Header.LENGTH
+                + (recordEntries ? numRecords * PalmDatabase.Record.LENGTH : 0);
+        final int record0 = PalmDatabase.Header.getLength(numRecords);
+        final byte[] file = new byte[record0 + data.length - 1 - pdbLength];
+        System.arraycopy(data, 1, file, 0, pdbLength);
+        System.arraycopy(data, 1 + pdbLength, file, record0, data.length - 1 - pdbLength);
+        return MobiHeader.read(ByteBuffer.wrap(file), fileLength, options);
+    }
+
+    private void loadIndex() throws IOException {
+        final long size = channel.size();
+        if (size == 0) {
+            final ByteBuffer fileHeader = ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+            ((Buffer) fileHeader).flip();
+            channel.write(fileHeader, 0);
+            channelEnd = FILE_HEADER_LENGTH;
+            return;
+        }
+
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0))));
+        if (is.readInt() != MAGIC || is.readInt() != VERSION) {
+            throw new IllegalStateException("Unsupported cache file format");
+        }
+        long pos = FILE_HEADER_LENGTH;
+        try {
+            while (pos < size) {
+                final byte[] path = new byte[is.readUnsignedShort()];
+                is.readFully(path);
+                final Key key = new Key(new String(path, StandardCharsets.UTF_8), is.readLong(), is.readLong());
+                final int length = is.readInt();
+                final long dataOffset = pos + 2 + path.length + 8 + 8 + 4;
+                if (length < 0 || dataOffset + length > size) {
+                    break;
+                }
+                is.skipBytes(length);
+                if (null != index.put(key.path, new Entry(key, dataOffset, length))) {
+                    supersededEntries++;
+                }
+                pos = dataOffset + length;
+            }
+        } catch (EOFException ex) {
+            // Truncated entry
+        }
+        channelEnd = pos;
+        if (pos < size) {
+            channel.truncate(pos);
+        }
+    }
+
+    /**
+     * Writes the current entries to a new cache file, in file order.
+     */
+    private void compact(Path compacted) throws IOException {
+        final List<Entry> entries = new ArrayList<>(index.values());
+        entries.sort(Comparator.comparingLong(entry -> entry.dataOffset));
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted)))) {
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            for (Entry entry : entries) {
+                final byte[] data = readData(entry);
+                if (null == data) {
+                    continue;
+                }
+                final byte[] path = entry.key.path.getBytes(StandardCharsets.UTF_8);
+                os.writeShort(path.length);
+                os.write(path);
+                os.writeLong(entry.key.size);
+                os.writeLong(entry.key.lastModified);
+                os.writeInt(data.length);
+                os.write(data);
+            }
+        }
+    }
+
+    private byte[] readEntry(Key key) throws IOException {
+        if (null == channel) {
+            return null;
+        }
+        final Entry entry;
+        synchronized (index) {
+            entry = index.get(key.path);
+        }
+        if (null == entry || !entry.key.equals(key)) {
+            return null;
+        }
+        final byte[] data = readData(entry);
+        if (null == data) {
+            return null;
+        }
+        final boolean recordEntries = (data[0] & FLAG_RECORD_ENTRIES) != 0;
+        return recordEntries || options.isSkipRecords() ? data : null;
+    }
+
+    private byte[] readData(Entry entry) throws IOException {
+        final byte[] data = new byte[entry.length];
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.dataOffset + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return data;
+    }
+
+    private void writeEntry(Key key, byte[] data) throws IOException {
+        if (null == channel) {
+            return;
+        }
+        final byte[] path = key.path.getBytes(StandardCharsets.UTF_8);
+        if (path.length > 0xFFFF) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(2 + path.length + 8 + 8 + 4 + data.length);
+        buffer.putShort((short) path.length).put(path).putLong(key.size).putLong(key.lastModified)
+                .putInt(data.length).put(data);
+        ((Buffer) buffer).flip();
+        synchronized (index) {
+            final long entryOffset = channelEnd;
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, entryOffset + buffer.position());
+            }
+            channelEnd = entryOffset + buffer.limit();
+            index.put(key.path, new Entry(key, channelEnd - data.length, data.length));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (null != channel) {
+            channel.close();
+        }
+    }
+
+    private static final class Key {
+        final String path;
+        final long size;
+        final long lastModified;
+
+        Key(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return size == key.size && lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + Long.hashCode(size);
+            result = 31 * result + Long.hashCode(lastModified);
+            return result;
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final long dataOffset;
+        final int length;
+
+        Entry(Key key, long dataOffset, int length) {
+            this.key = key;
+            this.dataOffset = dataOffset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package de.m3y.mobi.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Edits the EXTH records and the full name (title) of a MOBI file in place.
+ * <p>
+ * The EXTH header and the full name get rewritten directly after the MOBI header, using positioned writes.
+ * If they fit into the record containing the MOBI header (kindlegen leaves padding after the full name),
+ * only this region gets written. Otherwise the following records get shifted and the PDB record offsets
+ * get updated. Shifting is not atomic, so keep a copy of the file if an interrupted write is not acceptable.
+ * <p>
+ * Example:
+ * <code>
+ * try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+ * final MobiHeaderEditor editor = MobiHeaderEditor.read(channel, 0);
+ * editor.setTitle("Pro Git").setString(MobiHeader.Exth.RecordType.AUTHOR, "Scott Chacon");
+ * editor.write();
+ * }
+ * </code>
+ * <p>
+ * The PDB name is left unchanged. For hybrid files, edit the KF8 header using its
+ * {@link MobiHeader#headerRecordIndex}.
+ */
+public class MobiHeaderEditor {
+    private static final int PALMDOC_HEADER_LENGTH = 16;
+    private static final int FULL_NAME_OFFSET = 0x54;
+    private static final int EXTH_FLAGS = 0x80;
+    private static final int HAS_EXTH = 0x40;
+    private static final int SHIFT_CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final int headerRecordIndex;
+    private byte[] recordTable;
+    private int numRecords;
+    private int recordOffset;
+    private byte[] record;
+    private int headerLength;
+    private Charset encoding;
+    private int usedLength;
+    private String title;
+    private final List<Integer> typeCodes = new ArrayList<>();
+    private final List<byte[]> values = new ArrayList<>();
+
+    private MobiHeaderEditor(FileChannel channel, int headerRecordIndex) {
+        this.channel = channel;
+        this.headerRecordIndex = headerRecordIndex;
+    }
+
+    /**
+     * Reads the EXTH records and full name for editing.
+     *
+     * @param channel           the channel of the MOBI file, opened for reading and writing.
+     * @param headerRecordIndex the PDB record index of the MOBI header, e.g. 0.
+     * @return the editor.
+     * @throws IOException on error.
+     */
+    public static MobiHeaderEditor read(FileChannel channel, int headerRecordIndex) throws IOException {
+        final MobiHeaderEditor editor = new MobiHeaderEditor(channel, headerRecordIndex);
+        editor.load();
+        return editor;
+    }
+
+    private void load() throws IOException {
+        final ByteBuffer pdbHeader = readFully(0, PalmDatabase.Header.LENGTH);
+        numRecords = pdbHeader.getShort(76) & 0xFFFF;
+        if (headerRecordIndex < 0 || headerRecordIndex >= numRecords) {
+            throw new IllegalArgumentException("Record index " + headerRecordIndex + " out of range [0,"
+                    + numRecords + ")");
+        }
+        recordTable = readFully(PalmDatabase.Header.LENGTH, numRecords * PalmDatabase.Record.LENGTH).array();
+        recordOffset = getDataOffset(headerRecordIndex);
+        final long recordEnd = headerRecordIndex + 1 < numRecords ? getDataOffset(headerRecordIndex + 1)
+                : channel.size();
+        record = readFully(recordOffset, (int) (recordEnd - recordOffset)).array();
+
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final String identifier = StringPool.readTag(buffer, PALMDOC_HEADER_LENGTH);
+        if (!StringPool.MOBI.equals(identifier)) {
+            throw new IllegalStateException("Expected MOBI header in record " + headerRecordIndex + " but got "
+                    + identifier);
+        }
+        if (buffer.getShort(12) != 0) {
+            throw new IllegalStateException("Editing encrypted files is not supported, got encryption type "
+                    + buffer.getShort(12));
+        }
+        headerLength = buffer.getInt(PALMDOC_HEADER_LENGTH + 4);
+        encoding = MobiHeader.convertEncoding(buffer.getInt(PALMDOC_HEADER_LENGTH + 12));
+        final int fullNameOffset = buffer.getInt(FULL_NAME_OFFSET);
+        final int fullNameLength = buffer.getInt(FULL_NAME_OFFSET + 4);
+        title = BufferHelper.readString(buffer, fullNameOffset, fullNameLength, encoding);
+        usedLength = fullNameOffset + fullNameLength;
+
+        typeCodes.clear();
+        values.clear();
+        if ((buffer.getInt(EXTH_FLAGS) & HAS_EXTH) != 0) {
+            final int exthOffset = PALMDOC_HEADER_LENGTH + headerLength;
+            final String exthIdentifier = StringPool.readTag(buffer, exthOffset);
+            if (!StringPool.EXTH.equals(exthIdentifier)) {
+                throw new IllegalStateException("Expected EXTH header but got " + exthIdentifier);
+            }
+            final int recordCount = buffer.getInt(exthOffset + 8);
+            int offset = exthOffset + 12;
+            for (int i = 0; i < recordCount; i++) {
+                final int length = buffer.getInt(offset + 4);
+                if (length < 8 || offset + length > record.length) {
+                    throw new IllegalStateException("EXTH record " + i + " of length " + length
+                            + " exceeds record " + headerRecordIndex);
+                }
+                final byte[] value = new byte[length - 8];
+                System.arraycopy(record, offset + 8, value, 0, value.length);
+                typeCodes.add(buffer.getInt(offset));
+                values.add(value);
+                offset += length;
+            }
+            usedLength = Math.max(usedLength, offset);
+        }
+    }
+
+    /**
+     * Gets the full name.
+     *
+     * @return the title.
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Sets the full name.
+     *
+     * @param title the title.
+     * @return this editor.
+     */
+    public MobiHeaderEditor setTitle(String title) {
+        if (null == title) {
+            throw new IllegalArgumentException("Expected title but got null");
+        }
+        this.title = title;
+        return this;
+    }
+
+    /**
+     * Gets the data of the first EXTH record of given type.
+     *
+     * @param typeCode the record type code, see {@link MobiHeader.Exth.RecordType}.
+     * @return a copy of the data, or null if no such record exists.
+     */
+    public byte[] getBytes(int typeCode) {
+        final int i = typeCodes.indexOf(typeCode);
+        return i >= 0 ? values.get(i).clone() : null;
+    }
+
+    /**
+     * Gets the string data of the first EXTH record of given type.
+     *
+     * @param typeCode the record type code, see {@link MobiHeader.Exth.RecordType}.
+     * @return the data decoded using the MOBI header encoding, or null if no such record exists.
+     */
+    public String getString(int typeCode) {
+        final int i = typeCodes.indexOf(typeCode);
+        return i >= 0 ? new String(values.get(i), encoding) : null;
+    }
+
+    /**
+     * Replaces all EXTH records of given type by a single record, or adds the record.
+     *
+     * @param typeCode the record type code, see {@link MobiHeader.Exth.RecordType}.
+     * @param data     the record data.
+     * @return this editor.
+     */
+    public MobiHeaderEditor setBytes(int typeCode, byte[] data) {
+        final int i = typeCodes.indexOf(typeCode);
+        if (i < 0) {
+            return addBytes(typeCode, data);
+        }
+        remove(typeCode);
+        typeCodes.add(i, typeCode);
+        values.add(i, data.clone());
+        return this;
+    }
+
+    /**
+     * Replaces all EXTH records of given type by a single string record, or adds the record.
+     *
+     * @param typeCode the record type code, e.g. {@link MobiHeader.Exth.RecordType#AUTHOR}.
+     * @param data     the record data, encoded using the MOBI header encoding.
+     * @return this editor.
+     */
+    public MobiHeaderEditor setString(int typeCode, String data) {
+        return setBytes(typeCode, data.getBytes(encoding));
+    }
+
+    /**
+     * Replaces all EXTH records of given type by a single integer record, or adds the record.
+     *
+     * @param typeCode the record type code, e.g. {@link MobiHeader.Exth.RecordType#COVER_OFFSET}.
+     * @param data     the record data.
+     * @return this editor.
+     */
+    public MobiHeaderEditor setInt(int typeCode, int data) {
+        return setBytes(typeCode, ByteBuffer.allocate(4).putInt(data).array());
+    }
+
+    /**
+     * Adds an EXTH record, e.g. for multiple authors.
+     *
+     * @param typeCode the record type code, see {@link MobiHeader.Exth.RecordType}.
+     * @param data     the record data.
+     * @return this editor.
+     */
+    public MobiHeaderEditor addBytes(int typeCode, byte[] data) {
+        typeCodes.add(typeCode);
+        values.add(data.clone());
+        return this;
+    }
+
+    /**
+     * Adds an EXTH string record, e.g. for multiple authors.
+     *
+     * @param typeCode the record type code, e.g. {@link MobiHeader.Exth.RecordType#AUTHOR}.
+     * @param data     the record data, encoded using the MOBI header encoding.
+     * @return this editor.
+     */
+    public MobiHeaderEditor addString(int typeCode, String data) {
+        return addBytes(typeCode, data.getBytes(encoding));
+    }
+
+    /**
+     * Removes all EXTH records of given type.
+     *
+     * @param typeCode the record type code, see {@link MobiHeader.Exth.RecordType}.
+     * @return this editor.
+     */
+    public MobiHeaderEditor remove(int typeCode) {
+        for (int i = typeCodes.size() - 1; i >= 0; i--) {
+            if (typeCodes.get(i) == typeCode) {
+                typeCodes.remove(i);
+                values.remove(i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes the EXTH records and full name to the file.
+     *
+     * @return true, if written in place without shifting records.
+     * @throws IOException on error.
+     */
+    public boolean write() throws IOException {
+        // EXTH header, padded to four bytes, followed by the full name terminated by two zero bytes
+        int exthLength = 0;
+        if (!typeCodes.isEmpty()) {
+            exthLength = 12;
+            for (byte[] value : values) {
+                exthLength += 8 + value.length;
+            }
+        }
+        final byte[] fullName = title.getBytes(encoding);
+        final int tailOffset = PALMDOC_HEADER_LENGTH + headerLength;
+        final int fullNameOffset = tailOffset + align(exthLength);
+        final int newUsedLength = align(fullNameOffset + fullName.length + 2);
+
+        final boolean inPlace = newUsedLength <= record.length;
+        final int delta = inPlace ? 0 : align(newUsedLength - record.length);
+        final ByteBuffer tail = ByteBuffer.allocate(
+                inPlace ? Math.max(newUsedLength, Math.min(usedLength, record.length)) - tailOffset
+                        : record.length + delta - tailOffset);
+        if (exthLength > 0) {
+            tail.put(StringPool.EXTH.getBytes(encoding)).putInt(exthLength).putInt(typeCodes.size());
+            for (int i = 0; i < typeCodes.size(); i++) {
+                tail.putInt(typeCodes.get(i)).putInt(8 + values.get(i).length).put(values.get(i));
+            }
+        }
+        ((Buffer) tail).position(fullNameOffset - tailOffset);
+        tail.put(fullName);
+        ((Buffer) tail).clear();
+
+        final ByteBuffer header = ByteBuffer.wrap(record, FULL_NAME_OFFSET, EXTH_FLAGS + 4 - FULL_NAME_OFFSET)
+                .slice();
+        header.putInt(0, fullNameOffset);
+        header.putInt(4, fullName.length);
+        final int flags = header.getInt(EXTH_FLAGS - FULL_NAME_OFFSET);
+        header.putInt(EXTH_FLAGS - FULL_NAME_OFFSET, exthLength > 0 ? flags | HAS_EXTH : flags & ~HAS_EXTH);
+
+        if (!inPlace) {
+            shiftRecords(delta);
+        }
+        writeFully(header, recordOffset + FULL_NAME_OFFSET);
+        writeFully(tail, recordOffset + tailOffset);
+        load();
+        return inPlace;
+    }
+
+    /**
+     * Shifts all records following the header record, starting with the last chunk of the file.
+     */
+    private void shiftRecords(int delta) throws IOException {
+        final long size = channel.size();
+        final long from = headerRecordIndex + 1 < numRecords ? getDataOffset(headerRecordIndex + 1) : size;
+        if (size + delta > Integer.MAX_VALUE) {
+            throw new IllegalStateException("File of " + (size + delta) + " bytes exceeds maximum PDB size");
+        }
+        final ByteBuffer chunk = ByteBuffer.allocate(SHIFT_CHUNK_SIZE);
+        for (long pos = size; pos > from; ) {
+            final int n = (int) Math.min(SHIFT_CHUNK_SIZE, pos - from);
+            pos -= n;
+            ((Buffer) chunk).clear();
+            ((Buffer) chunk).limit(n);
+            readFully(chunk, pos);
+            ((Buffer) chunk).flip();
+            writeFully(chunk, pos + delta);
+        }
+
+        final ByteBuffer table = ByteBuffer.wrap(recordTable);
+        for (int i = headerRecordIndex + 1; i < numRecords; i++) {
+            table.putInt(i * PalmDatabase.Record.LENGTH, getDataOffset(i) + delta);
+        }
+        writeFully(table, PalmDatabase.Header.LENGTH);
+    }
+
+    private int getDataOffset(int index) {
+        return ByteBuffer.wrap(recordTable).getInt(index * PalmDatabase.Record.LENGTH);
+    }
+
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position);
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position() - start));
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position() - start);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package de.m3y.mobi.core;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Scans directory trees for MOBI files, reading headers in parallel.
+ * <p>
+ * Each file results in one {@link Result}, containing either the header or the error. An error reading one file
+ * does not abort the scan.
+ * <p>
+ * Example:
+ * <code>
+ * new MobiScanner(new ParseOptions().skipRecords(true), 8).scan(root, result -&gt; { ... });
+ * </code>
+ */
+public class MobiScanner {
+    private static final String[] EXTENSIONS = {".mobi", ".azw", ".azw3", ".prc"};
+
+    private final ParseOptions options;
+    private final int parallelism;
+    private final MobiHeaderCache cache;
+
+    /**
+     * Creates a scanner.
+     *
+     * @param options     the parse options for each file.
+     * @param parallelism the number of files read in parallel, or 0 for the number of available processors.
+     */
+    public MobiScanner(ParseOptions options, int parallelism) {
+        this(options, parallelism, null);
+    }
+
+    /**
+     * Creates a scanner reading headers via a cache, skipping unchanged files.
+     *
+     * @param cache       the header cache, including the parse options.
+     * @param parallelism the number of files read in parallel, or 0 for the number of available processors.
+     */
+    public MobiScanner(MobiHeaderCache cache, int parallelism) {
+        this(null, parallelism, cache);
+    }
+
+    private MobiScanner(ParseOptions options, int parallelism, MobiHeaderCache cache) {
+        if (parallelism < 0) {
+            throw new IllegalArgumentException("Expected parallelism >= 0 but got " + parallelism);
+        }
+        this.options = options;
+        this.cache = cache;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * The result of reading one file.
+     */
+    public static class Result {
+        public final Path path;
+        public final MobiHeader header;
+        public final Exception error;
+
+        Result(Path path, MobiHeader header, Exception error) {
+            this.path = path;
+            this.header = header;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "path=" + path +
+                    ", header=" + header +
+                    ", error=" + error +
+                    '}';
+        }
+    }
+
+    /**
+     * Creates an executor for reading files in parallel.
+     * <p>
+     * Uses virtual threads if available (Java 21+), or a fixed thread pool otherwise.
+     *
+     * @param parallelism the number of threads of the fixed thread pool.
+     * @return the executor.
+     */
+    public static ExecutorService newExecutor(int parallelism) {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * Scans a directory tree, using an executor created by {@link #newExecutor(int)}.
+     *
+     * @param root     the root directory, or a single file.
+     * @param consumer the consumer of results, invoked concurrently from reading threads.
+     * @throws IOException on error walking the directory tree.
+     * @see #scan(Path, ExecutorService, Consumer)
+     */
+    public void scan(Path root, Consumer<Result> consumer) throws IOException {
+        final ExecutorService executor = newExecutor(parallelism);
+        try {
+            scan(root, executor, consumer);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Scans a directory tree for files with a MOBI file extension, and reads the headers.
+     * <p>
+     * At most parallelism files get read at a time. Returns after all files got read.
+     *
+     * @param root     the root directory, or a single file.
+     * @param executor the executor for reading files.
+     * @param consumer the consumer of results, invoked concurrently from reading threads.
+     * @throws IOException on error walking the directory tree.
+     */
+    public void scan(Path root, ExecutorService executor, Consumer<Result> consumer) throws IOException {
+        final Semaphore permits = new Semaphore(parallelism);
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && isMobiFile(file)) {
+                        permits.acquireUninterruptibly();
+                        try {
+                            executor.execute(() -> {
+                                try {
+                                    consumer.accept(read(file));
+                                } finally {
+                                    permits.release();
+                                }
+                            });
+                        } catch (RuntimeException ex) {
+                            permits.release();
+                            throw ex;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException ex) {
+                    consumer.accept(new Result(file, null, ex));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            // Wait for pending files
+            permits.acquireUninterruptibly(parallelism);
+            permits.release(parallelism);
+        }
+    }
+
+    /**
+     * Reads the header of a single file, capturing any error.
+     *
+     * @param file the MOBI file.
+     * @return the result.
+     */
+    public Result read(Path file) {
+        try {
+            final MobiHeader header = null != cache ? cache.read(file) : MobiHeader.read(file, options);
+            return new Result(file, header, null);
+        } catch (IOException | RuntimeException ex) {
+            return new Result(file, null, ex);
+        }
+    }
+
+    static boolean isMobiFile(Path file) {
+        final Path fileName = file.getFileName();
+        if (null == fileName) {
+            return false;
+        }
+        final String name = fileName.toString().toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
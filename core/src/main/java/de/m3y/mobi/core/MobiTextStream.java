@@ -0,0 +1,119 @@
+package de.m3y.mobi.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the decompressed text of a MOBI book, record by record.
+ * <p>
+ * Only one text record is held in memory at a time, and a record gets decompressed when the consumer
+ * reads past the previous one. The stream ends after {@link MobiHeader#recordCount} records or
+ * {@link MobiHeader#textLength} bytes.
+ * <p>
+ * Example:
+ * <code>
+ * try (Reader reader = MobiTextStream.open(path).toReader()) {
+ * ...
+ * }
+ * </code>
+ */
+public class MobiTextStream extends InputStream {
+    private final TextRecords textRecords;
+    private final MobiHeader header;
+    private final byte[] record;
+    private int recordLength;
+    private int recordPos;
+    private int nextRecordIndex;
+    private long remaining;
+
+    /**
+     * Creates a stream for the text of a MOBI file.
+     *
+     * @param buffer the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header the MOBI header read from the buffer, including the PDB records.
+     */
+    public MobiTextStream(ByteBuffer buffer, MobiHeader header) {
+        this.textRecords = new TextRecords(buffer, header);
+        this.header = header;
+        this.record = new byte[textRecords.getMaxRecordLength()];
+        this.remaining = header.textLength & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Opens a stream for the text of a MOBI file, by memory mapping the file.
+     *
+     * @param path the MOBI file.
+     * @return the text stream.
+     * @throws IOException on error.
+     */
+    public static MobiTextStream open(Path path) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new MobiTextStream(buffer, MobiHeader.read(buffer));
+    }
+
+    /**
+     * Creates a reader decoding the text using the MOBI header encoding.
+     *
+     * @return the reader.
+     */
+    public Reader toReader() {
+        return new InputStreamReader(this, header.encoding);
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+        remaining--;
+        return record[recordPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int n = (int) Math.min(Math.min(len, recordLength - recordPos), remaining);
+        System.arraycopy(record, recordPos, b, off, n);
+        recordPos += n;
+        remaining -= n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(recordLength - recordPos, remaining);
+    }
+
+    /**
+     * Decompresses the next record if the current one is consumed.
+     *
+     * @return true, if data is available.
+     */
+    private boolean fill() {
+        while (recordPos >= recordLength) {
+            if (remaining <= 0 || nextRecordIndex >= textRecords.getRecordCount()) {
+                return false;
+            }
+            recordLength = textRecords.read(nextRecordIndex++, record, 0);
+            recordPos = 0;
+        }
+        return remaining > 0;
+    }
+}
@@ -17,6 +17,11 @@ public class PalmDatabase {
      * A PDB record entry.
      */
     public static class Record {
+        /**
+         * Size of a record entry in bytes.
+         */
+        public static final int LENGTH = 8;
+
         public int dataOffset; // 4 byte
         public byte attributes; // 1 byte
         public int uniqueID; // 3 bytes
@@ -32,7 +37,22 @@ public class PalmDatabase {
             Record record = new Record();
             record.dataOffset = is.readInt();
             record.attributes = is.readByte();
-            record.uniqueID = ByteBuffer.wrap(new byte[]{0, is.readByte(), is.readByte(), is.readByte()}).getInt();
+            record.uniqueID = (is.readUnsignedByte() << 16) | (is.readUnsignedByte() << 8) | is.readUnsignedByte();
+            return record;
+        }
+
+        /**
+         * Reads a record from buffer.
+         *
+         * @param buffer the buffer.
+         * @param offset the absolute offset of the record entry.
+         * @return the representing header.
+         */
+        public static Record read(ByteBuffer buffer, int offset) {
+            Record record = new Record();
+            record.dataOffset = buffer.getInt(offset);
+            record.attributes = buffer.get(offset + 4);
+            record.uniqueID = buffer.getInt(offset + 4) & 0x00FFFFFF;
             return record;
         }
 
@@ -46,10 +66,154 @@ public class PalmDatabase {
         }
     }
 
+    /**
+     * A compact table of PDB record entries, stored as parallel arrays instead of one {@link Record} per entry.
+     */
+    public static class RecordTable {
+        private final int[] dataOffsets;
+        private final byte[] attributes;
+        private final int[] uniqueIDs;
+        private final int fileLength;
+
+        private RecordTable(int numRecords, int fileLength) {
+            dataOffsets = new int[numRecords];
+            attributes = new byte[numRecords];
+            uniqueIDs = new int[numRecords];
+            this.fileLength = fileLength;
+        }
+
+        /**
+         * Reads record entries from stream.
+         *
+         * @param is         the input stream.
+         * @param numRecords the number of record entries.
+         * @return the record table, without file length.
+         * @throws IOException on error.
+         */
+        public static RecordTable read(DataInputStream is, int numRecords) throws IOException {
+            final RecordTable table = new RecordTable(numRecords, -1);
+            final byte[] entries = new byte[numRecords * Record.LENGTH];
+            is.readFully(entries);
+            table.decode(ByteBuffer.wrap(entries), 0);
+            return table;
+        }
+
+        /**
+         * Reads record entries from buffer.
+         *
+         * @param buffer     the buffer containing the PDB file, used for the file length.
+         * @param offset     the absolute offset of the first record entry.
+         * @param numRecords the number of record entries.
+         * @return the record table.
+         */
+        public static RecordTable read(ByteBuffer buffer, int offset, int numRecords) {
+            return read(buffer, offset, numRecords, buffer.limit());
+        }
+
+        /**
+         * Reads record entries from a buffer, which may contain only a prefix of the PDB file.
+         *
+         * @param fileLength the file length, or -1 if unknown.
+         */
+        static RecordTable read(ByteBuffer buffer, int offset, int numRecords, int fileLength) {
+            final RecordTable table = new RecordTable(numRecords, fileLength);
+            table.decode(buffer, offset);
+            return table;
+        }
+
+        private void decode(ByteBuffer buffer, int offset) {
+            for (int i = 0; i < dataOffsets.length; i++, offset += Record.LENGTH) {
+                dataOffsets[i] = buffer.getInt(offset);
+                final int v = buffer.getInt(offset + 4);
+                attributes[i] = (byte) (v >>> 24);
+                uniqueIDs[i] = v & 0x00FFFFFF;
+            }
+        }
+
+        /**
+         * Gets the number of record entries.
+         *
+         * @return the number of record entries.
+         */
+        public int size() {
+            return dataOffsets.length;
+        }
+
+        public int dataOffset(int index) {
+            return dataOffsets[index];
+        }
+
+        public byte attributes(int index) {
+            return attributes[index];
+        }
+
+        public int uniqueID(int index) {
+            return uniqueIDs[index];
+        }
+
+        /**
+         * Gets the length of a record's data, derived from the following record's offset.
+         * <p>
+         * The length of the last record requires the file length, only known if read from a buffer.
+         *
+         * @param index the record index.
+         * @return the length in bytes.
+         * @see #recordLength(int, int)
+         */
+        public int recordLength(int index) {
+            if (index + 1 == dataOffsets.length && fileLength < 0) {
+                throw new IllegalStateException("Unknown file length for length of last record " + index);
+            }
+            return recordLength(index, fileLength);
+        }
+
+        /**
+         * Gets the length of a record's data.
+         *
+         * @param index      the record index.
+         * @param fileLength the file length in bytes, for the last record.
+         * @return the length in bytes.
+         */
+        public int recordLength(int index, int fileLength) {
+            final int end = index + 1 < dataOffsets.length ? dataOffsets[index + 1] : fileLength;
+            return end - dataOffsets[index];
+        }
+
+        /**
+         * Converts the entries to records.
+         *
+         * @return the records.
+         */
+        public Record[] toRecords() {
+            final Record[] records = new Record[dataOffsets.length];
+            for (int i = 0; i < records.length; i++) {
+                final Record record = new Record();
+                record.dataOffset = dataOffsets[i];
+                record.attributes = attributes[i];
+                record.uniqueID = uniqueIDs[i];
+                records[i] = record;
+            }
+            return records;
+        }
+
+        @Override
+        public String toString() {
+            return "RecordTable{" +
+                    "size=" + dataOffsets.length +
+                    ", fileLength=" + fileLength +
+                    '}';
+        }
+    }
+
     /**
      * A PDB header.
      */
     public static class Header {
+        /**
+         * Size of the header in bytes, excluding the record entries.
+         */
+        public static final int LENGTH = 78;
+
         public String name; // 32byte
         public short attributes;
         public MobiHeader.CompressionType compression; // 2 byte
@@ -66,6 +230,7 @@ public class PalmDatabase {
         public int uniqueIdSeed;
         public short numRecords;
         public Record[] records;
+        public RecordTable recordTable;
 
 
         /**
@@ -79,6 +244,20 @@ public class PalmDatabase {
          * <a href="https://wiki.mobileread.com/wiki/MOBI">https://wiki.mobileread.com/wiki/MOBI</a>
          */
         public static Header read(DataInputStream is) throws IOException {
+            return read(is, new ParseOptions());
+        }
+
+        /**
+         * Reads header and optionally records from stream.
+         *
+         * @param is      the input stream.
+         * @param options the parse options, e.g. for skipping records.
+         * @return the representing header.
+         * @throws IOException on error.
+         */
+        public static Header read(DataInputStream is, ParseOptions options) throws IOException {
+            final ParseListener listener = ParseEvents.listener(options, ParseEvents.PALM_DATABASE_HEADER);
+            final long start = null != listener ? System.nanoTime() : 0;
             Header header = new Header();
 
             header.name = StreamHelper.readStringTillNull(is, 32, StandardCharsets.ISO_8859_1);
@@ -91,22 +270,195 @@ public class PalmDatabase {
             header.modificationNumber = is.readInt();
             header.appInfoId = is.readInt();
             header.sortInfoId = is.readInt();
-            header.type = StreamHelper.readString(is, 4, StandardCharsets.ISO_8859_1);
-            header.creator = StreamHelper.readString(is, 4, StandardCharsets.ISO_8859_1);
+            header.type = StreamHelper.readTag(is);
+            header.creator = StreamHelper.readTag(is);
             header.uniqueIdSeed = is.readInt();
             header.nextRecordListId = is.readInt();
             header.numRecords = is.readShort();
-            header.records = new Record[header.numRecords];
-            for (int i = 0; i < header.records.length; i++) {
-                header.records[i] = Record.read(is);
+            final int numRecords = header.numRecords & 0xFFFF;
+            if (options.isValidate()) {
+                validateNumRecords(numRecords, -1, options);
+            }
+            if (options.isSkipRecords()) {
+                is.skipBytes(numRecords * Record.LENGTH);
+            } else if (options.isCompactRecords()) {
+                header.recordTable = RecordTable.read(is, numRecords);
+            } else {
+                header.records = new Record[numRecords];
+                for (int i = 0; i < header.records.length; i++) {
+                    header.records[i] = Record.read(is);
+                }
+            }
+            if (options.isValidate()) {
+                validateRecordOffsets(header, -1);
             }
 
             // 2 byte gap
             is.skipBytes(2);
 
+            if (null != listener) {
+                listener.palmDatabaseHeaderRead(getLength(numRecords), numRecords, System.nanoTime() - start);
+            }
+            return header;
+        }
+
+        /**
+         * Reads header and records from buffer, starting at absolute offset 0.
+         *
+         * @param buffer the buffer.
+         * @return the representing header.
+         * @see #read(DataInputStream)
+         */
+        public static Header read(ByteBuffer buffer) {
+            return read(buffer, new ParseOptions());
+        }
+
+        /**
+         * Reads header and optionally records from buffer, starting at absolute offset 0.
+         *
+         * @param buffer  the buffer.
+         * @param options the parse options, e.g. for skipping records.
+         * @return the representing header.
+         */
+        public static Header read(ByteBuffer buffer, ParseOptions options) {
+            return read(buffer, buffer.limit(), options);
+        }
+
+        /**
+         * Reads header and optionally records from a buffer, which may contain only a prefix of the PDB file.
+         *
+         * @param buffer     the buffer, containing at least the header and record entries.
+         * @param fileLength the file length, or -1 if unknown.
+         * @param options    the parse options.
+         * @return the representing header.
+         */
+        static Header read(ByteBuffer buffer, int fileLength, ParseOptions options) {
+            buffer = BufferHelper.bigEndian(buffer);
+            final ParseListener listener = ParseEvents.listener(options, ParseEvents.PALM_DATABASE_HEADER);
+            final long start = null != listener ? System.nanoTime() : 0;
+            if (options.isValidate() && buffer.limit() < LENGTH) {
+                throw new MobiFormatException("fileLength", buffer.limit(), "File of " + buffer.limit()
+                        + " bytes is shorter than the PDB header of " + LENGTH + " bytes");
+            }
+            Header header = new Header();
+
+            header.name = BufferHelper.readStringTillNull(buffer, 0, 32, StandardCharsets.ISO_8859_1);
+
+            header.attributes = buffer.getShort(32);
+            header.version = buffer.getShort(34);
+            header.creationDate = convertPdpTimeToDate(buffer.getInt(36));
+            header.modificationDate = convertPdpTimeToDate(buffer.getInt(40));
+            header.lastBackupDate = convertPdpTimeToDate(buffer.getInt(44));
+            header.modificationNumber = buffer.getInt(48);
+            header.appInfoId = buffer.getInt(52);
+            header.sortInfoId = buffer.getInt(56);
+            header.type = StringPool.readTag(buffer, 60);
+            header.creator = StringPool.readTag(buffer, 64);
+            header.uniqueIdSeed = buffer.getInt(68);
+            header.nextRecordListId = buffer.getInt(72);
+            header.numRecords = buffer.getShort(76);
+            final int numRecords = header.numRecords & 0xFFFF;
+            if (options.isValidate()) {
+                validateNumRecords(numRecords, buffer.limit(), options);
+            }
+            if (options.isCompactRecords() && !options.isSkipRecords()) {
+                header.recordTable = RecordTable.read(buffer, LENGTH, numRecords, fileLength);
+            } else if (!options.isSkipRecords()) {
+                header.records = new Record[numRecords];
+                for (int i = 0; i < header.records.length; i++) {
+                    header.records[i] = Record.read(buffer, LENGTH + i * Record.LENGTH);
+                }
+            }
+            if (options.isValidate()) {
+                validateRecordOffsets(header, fileLength);
+            }
+
+            if (null != listener) {
+                listener.palmDatabaseHeaderRead(getLength(numRecords), numRecords, System.nanoTime() - start);
+            }
             return header;
         }
 
+        /**
+         * Gets the size of the header including record entries and the trailing 2 byte gap.
+         *
+         * @param numRecords the number of records.
+         * @return the size in bytes.
+         */
+        public static int getLength(int numRecords) {
+            return LENGTH + (numRecords & 0xFFFF) * Record.LENGTH + 2;
+        }
+
+        private static void validateNumRecords(int numRecords, int fileLength, ParseOptions options) {
+            if (numRecords > options.getMaxRecords()) {
+                throw new MobiFormatException("numRecords", numRecords, "Number of PDB records " + numRecords
+                        + " exceeds limit of " + options.getMaxRecords());
+            }
+            if (fileLength >= 0 && getLength(numRecords) > fileLength) {
+                throw new MobiFormatException("numRecords", numRecords, "Record entries of " + numRecords
+                        + " records exceed file length of " + fileLength + " bytes");
+            }
+        }
+
+        /**
+         * Checks that record offsets follow the record entries, ascending and within the file if its length is known.
+         * <p>
+         * The file length may exceed the buffer, if the buffer only contains the header bytes.
+         */
+        private static void validateRecordOffsets(Header header, int fileLength) {
+            if (null == header.records && null == header.recordTable) {
+                return;
+            }
+            int previous = LENGTH + (header.numRecords & 0xFFFF) * Record.LENGTH;
+            for (int i = 0; i < (header.numRecords & 0xFFFF); i++) {
+                final int offset = header.getRecordOffset(i);
+                if (offset < previous || (fileLength >= 0 && offset > fileLength)) {
+                    throw new MobiFormatException("records[" + i + "].dataOffset", offset, "Offset " + offset
+                            + " of record " + i + " not in range [" + previous + ","
+                            + (fileLength >= 0 ? fileLength : Integer.MAX_VALUE) + "]");
+                }
+                previous = offset;
+            }
+        }
+
+        /**
+         * Gets the absolute offset of a record's data.
+         *
+         * @param index the record index.
+         * @return the offset.
+         */
+        public int getRecordOffset(int index) {
+            if (null != recordTable) {
+                return recordTable.dataOffset(index);
+            }
+            checkRecords();
+            return records[index].dataOffset;
+        }
+
+        /**
+         * Gets the length of a record's data.
+         * <p>
+         * The length is derived from the following record's offset, or the file length for the last record.
+         *
+         * @param index      the record index.
+         * @param fileLength the file length in bytes.
+         * @return the length in bytes.
+         */
+        public int getRecordLength(int index, int fileLength) {
+            if (null != recordTable) {
+                return recordTable.recordLength(index, fileLength);
+            }
+            checkRecords();
+            final int end = index + 1 < records.length ? records[index + 1].dataOffset : fileLength;
+            return end - records[index].dataOffset;
+        }
+
+        private void checkRecords() {
+            if (null == records) {
+                throw new IllegalStateException("PDB records not read, see ParseOptions#skipRecords");
+            }
+        }
+
         private static Date convertPdpTimeToDate(int pdpTime) {
             // If the time has the top bit set, it's an unsigned 32-bit number counting from 1st Jan 1904
             // If the time has the top bit clear, it's a signed 32-bit number counting from 1st Jan 1970.
@@ -137,7 +489,9 @@ public class PalmDatabase {
                     ", uniqueIdSeed=" + uniqueIdSeed +
                     ", compression=" + compression +
                     ", numRecords=" + numRecords +
-                    ", records=" + (records.length > 10 ? "... (too long)" : Arrays.toString(records)) +
+                    ", records=" + (null != records && records.length > 10
+                    ? "... (too long)" : Arrays.toString(records)) +
+                    ", recordTable=" + recordTable +
                     '}';
         }
     }
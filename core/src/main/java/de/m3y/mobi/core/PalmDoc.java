@@ -0,0 +1,309 @@
+package de.m3y.mobi.core;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * PalmDOC (LZ77 byte pair) compression and decompression, as used for
+ * {@link MobiHeader.CompressionType#OLD_MOBIPOCKET_COMPRESSION}.
+ * <p>
+ * See <a href="https://wiki.mobileread.com/wiki/PalmDOC#PalmDOC_byte_pair_compression">https://wiki.mobileread.com/wiki/PalmDOC#PalmDOC_byte_pair_compression</a>
+ */
+public class PalmDoc {
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = 10;
+    private static final int MAX_DISTANCE = 0x07FF;
+    private static final int MAX_LITERALS = 8;
+    private static final int RECORDS_PER_TASK = 8;
+    private static final ThreadLocal<Compressor> COMPRESSORS = ThreadLocal.withInitial(Compressor::new);
+
+    private PalmDoc() {
+        // Not instantiable
+    }
+
+    /**
+     * Decompresses a PalmDOC compressed record into the given array.
+     * <p>
+     * Does not allocate, so the output array can be reused for all records of a book.
+     *
+     * @param in        the buffer containing the compressed data.
+     * @param offset    the absolute offset of the compressed data.
+     * @param length    the length of the compressed data, excluding any trailing entries.
+     * @param out       the output array.
+     * @param outOffset the offset in the output array.
+     * @param maxLength the maximum number of decompressed bytes, e.g. {@link MobiHeader#recordSize}.
+     * @return the number of decompressed bytes.
+     * @throws IllegalStateException if the data is corrupt or exceeds the maximum length.
+     */
+    public static int decompress(ByteBuffer in, int offset, int length, byte[] out, int outOffset, int maxLength) {
+        final int end = offset + length;
+        final int outLimit = outOffset + Math.min(maxLength, out.length - outOffset);
+        int i = offset;
+        int o = outOffset;
+        while (i < end) {
+            final int c = in.get(i++) & 0xFF;
+            if (c >= 0x01 && c <= 0x08) {
+                // Copy next c bytes literally
+                if (i + c > end) {
+                    throw new IllegalStateException("Literal of " + c + " bytes exceeds compressed data at " + i);
+                }
+                if (o + c > outLimit) {
+                    throw exceedsMaxLength(maxLength);
+                }
+                for (int j = 0; j < c; j++) {
+                    out[o++] = in.get(i++);
+                }
+            } else if (c < 0x80) {
+                // 0x00 or 0x09..0x7F : the byte itself
+                if (o >= outLimit) {
+                    throw exceedsMaxLength(maxLength);
+                }
+                out[o++] = (byte) c;
+            } else if (c >= 0xC0) {
+                // Space followed by c xor 0x80
+                if (o + 2 > outLimit) {
+                    throw exceedsMaxLength(maxLength);
+                }
+                out[o++] = ' ';
+                out[o++] = (byte) (c ^ 0x80);
+            } else {
+                // 0x80..0xBF : 11 bit distance and 3 bit length (plus 3) of a back reference
+                if (i >= end) {
+                    throw new IllegalStateException("Truncated back reference at " + i);
+                }
+                final int pair = (c << 8) | (in.get(i++) & 0xFF);
+                final int distance = (pair >> 3) & 0x07FF;
+                final int n = (pair & 0x07) + 3;
+                if (distance == 0 || distance > o - outOffset) {
+                    throw new IllegalStateException("Invalid back reference distance " + distance + " at " + i);
+                }
+                if (o + n > outLimit) {
+                    throw exceedsMaxLength(maxLength);
+                }
+                // Byte by byte, as source and destination may overlap
+                for (int from = o - distance, j = 0; j < n; j++) {
+                    out[o++] = out[from++];
+                }
+            }
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * Gets the maximum compressed length, for sizing output arrays.
+     *
+     * @param length the uncompressed length.
+     * @return the maximum compressed length.
+     */
+    public static int maxCompressedLength(int length) {
+        // A literal run of eight bytes takes nine bytes, shorter runs are followed by a shorter back reference or pair
+        return length + (length + MAX_LITERALS - 1) / MAX_LITERALS;
+    }
+
+    /**
+     * Compresses a record, using a compressor of the current thread.
+     *
+     * @param in     the uncompressed data.
+     * @param offset the offset of the uncompressed data.
+     * @param length the length of the uncompressed data, e.g. at most {@link MobiHeader#recordSize}.
+     * @return the compressed data.
+     */
+    public static byte[] compress(byte[] in, int offset, int length) {
+        return COMPRESSORS.get().compress(in, offset, length);
+    }
+
+    /**
+     * Splits the text into records of given size and compresses the records in parallel.
+     * <p>
+     * Records get split at byte boundaries, without trailing entries for multibyte characters spanning records.
+     *
+     * @param text       the uncompressed text.
+     * @param recordSize the uncompressed record size, e.g. 4096.
+     * @param executor   the executor, e.g. a {@link java.util.concurrent.ForkJoinPool}.
+     * @return the compressed records.
+     */
+    public static byte[][] compressRecords(byte[] text, int recordSize, Executor executor) {
+        if (recordSize <= 0) {
+            throw new IllegalArgumentException("Expected recordSize > 0 but got " + recordSize);
+        }
+        final int count = (text.length + recordSize - 1) / recordSize;
+        final byte[][] records = new byte[count][];
+        final CompletableFuture<?>[] tasks = new CompletableFuture<?>[(count + RECORDS_PER_TASK - 1)
+                / RECORDS_PER_TASK];
+        for (int t = 0; t < tasks.length; t++) {
+            final int from = t * RECORDS_PER_TASK;
+            final int to = Math.min(from + RECORDS_PER_TASK, count);
+            tasks[t] = CompletableFuture.runAsync(() -> {
+                final Compressor compressor = COMPRESSORS.get();
+                for (int i = from; i < to; i++) {
+                    final int offset = i * recordSize;
+                    records[i] = compressor.compress(text, offset, Math.min(recordSize, text.length - offset));
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        return records;
+    }
+
+    /**
+     * Compresses records using hash chains for finding back references.
+     * <p>
+     * Reuses its state for all records, so compressing into a given array does not allocate.
+     * Not thread safe, use one compressor per thread.
+     */
+    public static final class Compressor {
+        private static final int HASH_BITS = 12;
+        private static final int MAX_CHAIN = 32;
+
+        private final int[] head = new int[1 << HASH_BITS]; // Last position + 1 per hash, 0 if none
+        private int[] prev = new int[4096]; // Previous position per position, -1 if none
+        private byte[] scratch = new byte[maxCompressedLength(4096)];
+
+        /**
+         * Compresses a record into a new array.
+         *
+         * @param in     the uncompressed data.
+         * @param offset the offset of the uncompressed data.
+         * @param length the length of the uncompressed data.
+         * @return the compressed data.
+         */
+        public byte[] compress(byte[] in, int offset, int length) {
+            if (scratch.length < maxCompressedLength(length)) {
+                scratch = new byte[maxCompressedLength(length)];
+            }
+            return Arrays.copyOf(scratch, compress(in, offset, length, scratch, 0));
+        }
+
+        /**
+         * Compresses a record into the given array.
+         *
+         * @param in        the uncompressed data.
+         * @param offset    the offset of the uncompressed data.
+         * @param length    the length of the uncompressed data.
+         * @param out       the output array, with at least {@link PalmDoc#maxCompressedLength(int)} bytes available.
+         * @param outOffset the offset in the output array.
+         * @return the number of compressed bytes.
+         */
+        public int compress(byte[] in, int offset, int length, byte[] out, int outOffset) {
+            if (offset < 0 || length < 0 || length > in.length - offset) {
+                throw new IndexOutOfBoundsException("Invalid range offset=" + offset + ", length=" + length);
+            }
+            if (out.length - outOffset < maxCompressedLength(length)) {
+                throw new IllegalArgumentException("Expected output of at least " + maxCompressedLength(length)
+                        + " bytes but got " + (out.length - outOffset));
+            }
+            if (prev.length < length) {
+                prev = new int[length];
+            }
+            Arrays.fill(head, 0);
+
+            int o = outOffset;
+            int literals = -1; // Output position of the pending literal run count, if any
+            int i = 0;
+            while (i < length) {
+                final int matchLength;
+                final int distance;
+                if (i + MIN_MATCH <= length) {
+                    final long match = findMatch(in, offset, length, i);
+                    matchLength = (int) (match >>> 32);
+                    distance = (int) match;
+                } else {
+                    matchLength = 0;
+                    distance = 0;
+                }
+
+                if (matchLength >= MIN_MATCH) {
+                    final int pair = 0x8000 | (distance << 3) | (matchLength - MIN_MATCH);
+                    out[o++] = (byte) (pair >>> 8);
+                    out[o++] = (byte) pair;
+                    literals = -1;
+                    for (int end = i + matchLength; i < end; i++) {
+                        insert(in, offset, length, i);
+                    }
+                    continue;
+                }
+
+                final int c = in[offset + i] & 0xFF;
+                if (c == ' ' && i + 1 < length && (in[offset + i + 1] & 0xFF) >= 0x40
+                        && (in[offset + i + 1] & 0xFF) < 0x80) {
+                    // Space followed by a character
+                    out[o++] = (byte) (in[offset + i + 1] ^ 0x80);
+                    literals = -1;
+                    insert(in, offset, length, i++);
+                    insert(in, offset, length, i++);
+                    continue;
+                }
+
+                if (literals < 0 && (c == 0 || (c >= 0x09 && c < 0x80))) {
+                    out[o++] = (byte) c;
+                } else {
+                    // Literal run, also absorbing plain bytes so a run is either full or followed by a shorter code
+                    if (literals < 0) {
+                        literals = o++;
+                        out[literals] = 0;
+                    }
+                    out[o++] = (byte) c;
+                    if (++out[literals] == MAX_LITERALS) {
+                        literals = -1;
+                    }
+                }
+                insert(in, offset, length, i++);
+            }
+            return o - outOffset;
+        }
+
+        /**
+         * Finds the longest back reference for a position, searching the hash chain.
+         *
+         * @return the match length in the upper and the distance in the lower 32 bits, or 0 if no match.
+         */
+        private long findMatch(byte[] in, int offset, int length, int pos) {
+            final int maxLength = Math.min(MAX_MATCH, length - pos);
+            int bestLength = 0;
+            int bestDistance = 0;
+            int candidate = head[hash(in, offset + pos)] - 1;
+            for (int chain = 0; candidate >= 0 && pos - candidate <= MAX_DISTANCE && chain < MAX_CHAIN; chain++) {
+                int n = 0;
+                while (n < maxLength && in[offset + candidate + n] == in[offset + pos + n]) {
+                    n++;
+                }
+                if (n > bestLength) {
+                    bestLength = n;
+                    bestDistance = pos - candidate;
+                    if (n == maxLength) {
+                        break;
+                    }
+                }
+                candidate = prev[candidate];
+            }
+            return bestLength >= MIN_MATCH ? ((long) bestLength << 32) | bestDistance : 0;
+        }
+
+        private void insert(byte[] in, int offset, int length, int pos) {
+            if (pos + MIN_MATCH <= length) {
+                final int h = hash(in, offset + pos);
+                prev[pos] = head[h] - 1;
+                head[h] = pos + 1;
+            }
+        }
+
+        private static int hash(byte[] in, int i) {
+            final int v = ((in[i] & 0xFF) << 16) | ((in[i + 1] & 0xFF) << 8) | (in[i + 2] & 0xFF);
+            return (v * 0x9E3779B1) >>> (32 - HASH_BITS);
+        }
+    }
+
+    private static IllegalStateException exceedsMaxLength(int maxLength) {
+        return new IllegalStateException("Decompressed data exceeds maximum length of " + maxLength + " bytes");
+    }
+}
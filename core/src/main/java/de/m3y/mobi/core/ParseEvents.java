@@ -0,0 +1,77 @@
+package de.m3y.mobi.core;
+
+import java.util.function.IntFunction;
+
+/**
+ * Resolves the listener for a parse, combining the listener of the parse options and JFR events.
+ * <p>
+ * The JFR listener gets loaded reflectively, so the library still runs on JVMs without the {@code jdk.jfr} module.
+ * As JFR events measure their duration themselves, a JFR listener gets created per parse phase, beginning its event
+ * when the phase starts.
+ */
+final class ParseEvents {
+    static final int PALM_DATABASE_HEADER = 0;
+    static final int MOBI_HEADER = 1;
+    static final int EXTH_HEADER = 2;
+
+    // Creates a JFR listener for a phase, or null if its event is disabled
+    private static final IntFunction<ParseListener> JFR = loadJfrListenerFactory();
+
+    private ParseEvents() {
+        // Not instantiable
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IntFunction<ParseListener> loadJfrListenerFactory() {
+        try {
+            return (IntFunction<ParseListener>) Class.forName("de.m3y.mobi.core.JfrParseListener")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            return null; // No JFR support
+        }
+    }
+
+    /**
+     * Gets the listener for a parse phase, called when the phase starts.
+     *
+     * @param options the parse options.
+     * @param phase   the phase, e.g. {@link #MOBI_HEADER}.
+     * @return the listener, or null if neither a listener is registered nor the JFR event of the phase is enabled.
+     */
+    static ParseListener listener(ParseOptions options, int phase) {
+        final ParseListener listener = options.getListener();
+        final ParseListener jfr = null != JFR ? JFR.apply(phase) : null;
+        if (null == jfr) {
+            return listener;
+        }
+        return null == listener ? jfr : new Composite(listener, jfr);
+    }
+
+    private static final class Composite implements ParseListener {
+        private final ParseListener first;
+        private final ParseListener second;
+
+        Composite(ParseListener first, ParseListener second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void palmDatabaseHeaderRead(int bytes, int numRecords, long elapsedNanos) {
+            first.palmDatabaseHeaderRead(bytes, numRecords, elapsedNanos);
+            second.palmDatabaseHeaderRead(bytes, numRecords, elapsedNanos);
+        }
+
+        @Override
+        public void mobiHeaderRead(int bytes, int recordIndex, long elapsedNanos) {
+            first.mobiHeaderRead(bytes, recordIndex, elapsedNanos);
+            second.mobiHeaderRead(bytes, recordIndex, elapsedNanos);
+        }
+
+        @Override
+        public void exthHeaderRead(int bytes, int recordCount, long elapsedNanos) {
+            first.exthHeaderRead(bytes, recordCount, elapsedNanos);
+            second.exthHeaderRead(bytes, recordCount, elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package de.m3y.mobi.core;
+
+/**
+ * Receives measurements of parse phases, e.g. for finding out where time is spent when scanning many files.
+ * <p>
+ * Register a listener with {@link ParseOptions#listener(ParseListener)}. Without listener, the parsers skip
+ * measuring. Listeners get called on the parsing thread, and must be thread safe if the options get shared.
+ * <p>
+ * Besides listeners, the parse phases get reported as JDK Flight Recorder events if the runtime supports JFR
+ * and a recording enables the events, see the {@code de.m3y.mobi.*} event types.
+ */
+public interface ParseListener {
+    /**
+     * Called after reading the PDB header, including record entries unless skipped.
+     *
+     * @param bytes        the number of bytes of the header and record entries.
+     * @param numRecords   the number of PDB records.
+     * @param elapsedNanos the elapsed time in nanoseconds.
+     */
+    default void palmDatabaseHeaderRead(int bytes, int numRecords, long elapsedNanos) {
+    }
+
+    /**
+     * Called after reading the PalmDOC and MOBI header of a record, excluding the EXTH header.
+     *
+     * @param bytes        the number of bytes of the PalmDOC and MOBI header.
+     * @param recordIndex  the index of the PDB record containing the header.
+     * @param elapsedNanos the elapsed time in nanoseconds.
+     */
+    default void mobiHeaderRead(int bytes, int recordIndex, long elapsedNanos) {
+    }
+
+    /**
+     * Called after reading the EXTH header.
+     *
+     * @param bytes        the EXTH header length in bytes.
+     * @param recordCount  the number of EXTH records read.
+     * @param elapsedNanos the elapsed time in nanoseconds.
+     */
+    default void exthHeaderRead(int bytes, int recordCount, long elapsedNanos) {
+    }
+}
@@ -0,0 +1,206 @@
+package de.m3y.mobi.core;
+
+import java.util.Arrays;
+
+/**
+ * Options for reading MOBI header data.
+ * <p>
+ * Example:
+ * <code>
+ * final MobiHeader header = MobiHeader.read(path, new ParseOptions().lazyExth(true));
+ * </code>
+ * <p>
+ * Reading only the header fields required, e.g. for a directory crawler:
+ * <code>
+ * new ParseOptions().skipRecords(true).exthRecordTypes(RecordType.AUTHOR, RecordType.ASIN)
+ * </code>
+ */
+public class ParseOptions {
+    private boolean lazyExth;
+    private boolean skipRecords;
+    private boolean compactRecords;
+    private int[] exthRecordTypes; // Sorted, or null for all
+    private ParseListener listener;
+    private boolean validate;
+    private int maxRecords = 0xFFFF;
+    private int maxExthRecords = 4096;
+    private int maxExthLength = 1024 * 1024;
+
+    /**
+     * Enables lazy EXTH decoding.
+     * <p>
+     * If enabled, only type code, offset and length of each EXTH record get indexed, and the record data gets
+     * decoded on access, e.g. via {@link MobiHeader.Exth.Header#getRecordByTypeCode(int)}.
+     * The {@link MobiHeader.Exth.Header#records} field stays null.
+     *
+     * @param lazyExth true, if EXTH records should be decoded on demand.
+     * @return these options.
+     */
+    public ParseOptions lazyExth(boolean lazyExth) {
+        this.lazyExth = lazyExth;
+        return this;
+    }
+
+    public boolean isLazyExth() {
+        return lazyExth;
+    }
+
+    /**
+     * Skips reading the PDB record entries.
+     * <p>
+     * If enabled, the record entries get skipped and {@link PalmDatabase.Header#records} stays null.
+     * Reading text records or images requires the record entries.
+     *
+     * @param skipRecords true, if PDB record entries should not be read.
+     * @return these options.
+     */
+    public ParseOptions skipRecords(boolean skipRecords) {
+        this.skipRecords = skipRecords;
+        return this;
+    }
+
+    public boolean isSkipRecords() {
+        return skipRecords;
+    }
+
+    /**
+     * Reads the PDB record entries into a compact table.
+     * <p>
+     * If enabled, the record entries get stored as parallel arrays in {@link PalmDatabase.Header#recordTable},
+     * and {@link PalmDatabase.Header#records} stays null. Ignored if records get skipped.
+     *
+     * @param compactRecords true, if PDB record entries should be read into a compact table.
+     * @return these options.
+     */
+    public ParseOptions compactRecords(boolean compactRecords) {
+        this.compactRecords = compactRecords;
+        return this;
+    }
+
+    public boolean isCompactRecords() {
+        return compactRecords;
+    }
+
+    /**
+     * Selects the EXTH record types to read, skipping all other EXTH records.
+     * <p>
+     * The {@link MobiHeader.Exth.Header#recordCount} is the number of selected records found.
+     *
+     * @param typeCodes the EXTH record type codes, see {@link MobiHeader.Exth.RecordType}. None for all types.
+     * @return these options.
+     */
+    public ParseOptions exthRecordTypes(int... typeCodes) {
+        if (null == typeCodes || typeCodes.length == 0) {
+            exthRecordTypes = null;
+        } else {
+            exthRecordTypes = typeCodes.clone();
+            Arrays.sort(exthRecordTypes);
+        }
+        return this;
+    }
+
+    /**
+     * Checks if an EXTH record type should be read.
+     *
+     * @param typeCode the EXTH record type code.
+     * @return true, if selected or no types are selected at all.
+     */
+    public boolean isExthRecordTypeSelected(int typeCode) {
+        return null == exthRecordTypes || Arrays.binarySearch(exthRecordTypes, typeCode) >= 0;
+    }
+
+    /**
+     * Enables validating parsing, for corrupt or hostile files.
+     * <p>
+     * If enabled, every length and count gets checked against the file length and the configured limits before
+     * allocating, throwing a {@link MobiFormatException} if exceeded. Unknown codes, e.g. of the compression type,
+     * also throw a {@link MobiFormatException}. Reading from stream checks limits only, as the file length is unknown.
+     *
+     * @param validate true, if fields should be validated.
+     * @return these options.
+     */
+    public ParseOptions validate(boolean validate) {
+        this.validate = validate;
+        return this;
+    }
+
+    public boolean isValidate() {
+        return validate;
+    }
+
+    /**
+     * Limits the number of PDB records, if validating.
+     *
+     * @param maxRecords the maximum number of PDB records, at most 65535 (default).
+     * @return these options.
+     */
+    public ParseOptions maxRecords(int maxRecords) {
+        this.maxRecords = maxRecords;
+        return this;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * Limits the number of EXTH records, if validating.
+     *
+     * @param maxExthRecords the maximum number of EXTH records, 4096 by default.
+     * @return these options.
+     */
+    public ParseOptions maxExthRecords(int maxExthRecords) {
+        this.maxExthRecords = maxExthRecords;
+        return this;
+    }
+
+    public int getMaxExthRecords() {
+        return maxExthRecords;
+    }
+
+    /**
+     * Limits the EXTH header length, if validating.
+     * <p>
+     * If not validating, the limit still bounds the EXTH record data copied when reading from stream or buffer.
+     *
+     * @param maxExthLength the maximum EXTH header length in bytes, 1 MiB by default.
+     * @return these options.
+     */
+    public ParseOptions maxExthLength(int maxExthLength) {
+        this.maxExthLength = maxExthLength;
+        return this;
+    }
+
+    public int getMaxExthLength() {
+        return maxExthLength;
+    }
+
+    /**
+     * Registers a listener for measuring parse phases.
+     *
+     * @param listener the listener, or null for none.
+     * @return these options.
+     */
+    public ParseOptions listener(ParseListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public ParseListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseOptions{" +
+                "lazyExth=" + lazyExth +
+                ", skipRecords=" + skipRecords +
+                ", compactRecords=" + compactRecords +
+                ", exthRecordTypes=" + Arrays.toString(exthRecordTypes) +
+                ", validate=" + validate +
+                ", maxRecords=" + maxRecords +
+                ", maxExthRecords=" + maxExthRecords +
+                ", maxExthLength=" + maxExthLength +
+                '}';
+    }
+}
@@ -0,0 +1,228 @@
+package de.m3y.mobi.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads byte ranges of the decompressed text of a MOBI book by text offset.
+ * <p>
+ * Text records decompress to at most {@link MobiHeader#recordSize} bytes, but not necessarily to exactly that size,
+ * e.g. for HUFF/CDIC compression. A text offset gets mapped to its record by dividing by the record size, as long as
+ * the records decompressed so far are full. Once a record other than the last one decompresses to less, a table of
+ * record start offsets gets built from the decompressed lengths of all records and used instead.
+ * Recently decompressed records are kept in a small LRU cache, e.g. for reading consecutive pages.
+ * <p>
+ * Example:
+ * <code>
+ * final RandomAccessText text = RandomAccessText.open(path);
+ * final byte[] page = text.read(offset, 2048);
+ * </code>
+ * <p>
+ * Reading is thread safe.
+ */
+public class RandomAccessText {
+    private static final int DEFAULT_CACHE_SIZE = 4;
+
+    private final TextRecords textRecords;
+    private final long textLength;
+    private final int recordSize;
+    private final Map<Integer, DecodedRecord> cache;
+    // Text offset of each record plus the text end, null until a record deviates from the record size
+    private volatile long[] recordStarts;
+
+    /**
+     * Creates a reader with the default cache size.
+     *
+     * @param buffer the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header the MOBI header read from the buffer, including the PDB records.
+     */
+    public RandomAccessText(ByteBuffer buffer, MobiHeader header) {
+        this(buffer, header, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a reader.
+     *
+     * @param buffer    the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header    the MOBI header read from the buffer, including the PDB records.
+     * @param cacheSize the maximum number of decompressed records kept in the cache.
+     */
+    public RandomAccessText(ByteBuffer buffer, MobiHeader header, final int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Expected cacheSize >= 0 but got " + cacheSize);
+        }
+        textRecords = new TextRecords(buffer, header);
+        recordSize = textRecords.getMaxRecordLength();
+        textLength = Math.min(header.textLength & 0xFFFFFFFFL, (long) textRecords.getRecordCount() * recordSize);
+        cache = new LinkedHashMap<Integer, DecodedRecord>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DecodedRecord> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Opens a reader for the text of a MOBI file, by memory mapping the file.
+     *
+     * @param path the MOBI file.
+     * @return the reader.
+     * @throws IOException on error.
+     */
+    public static RandomAccessText open(Path path) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new RandomAccessText(buffer, MobiHeader.read(buffer));
+    }
+
+    /**
+     * Gets the text length, as stated by the MOBI header.
+     * <p>
+     * Reading stops at the end of the last text record, if the records decompress to less.
+     *
+     * @return the length in bytes.
+     */
+    public long length() {
+        return textLength;
+    }
+
+    /**
+     * Reads a byte range of the text.
+     *
+     * @param offset the text offset.
+     * @param length the maximum number of bytes.
+     * @return the bytes, shorter than length if the range exceeds the text.
+     */
+    public byte[] read(long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IndexOutOfBoundsException("Invalid range offset=" + offset + ", length=" + length);
+        }
+        final byte[] out = new byte[(int) Math.max(0, Math.min(length, textLength - offset))];
+        final int n = read(offset, out, 0, out.length);
+        return n == out.length ? out : Arrays.copyOf(out, Math.max(n, 0));
+    }
+
+    /**
+     * Reads a byte range of the text into an array.
+     *
+     * @param offset    the text offset.
+     * @param out       the output array.
+     * @param outOffset the offset in the output array.
+     * @param length    the maximum number of bytes.
+     * @return the number of bytes read, or -1 if the offset is at or beyond the end of the text.
+     * @throws IllegalStateException if a text record can not be decompressed.
+     */
+    public int read(long offset, byte[] out, int outOffset, int length) {
+        if (offset < 0 || outOffset < 0 || length < 0 || length > out.length - outOffset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (offset >= textLength) {
+            return -1;
+        }
+        final int n = (int) Math.min(length, textLength - offset);
+        int done = 0;
+        while (done < n) {
+            final long pos = offset + done;
+            final long[] starts = recordStarts;
+            final int index;
+            final int recordPos;
+            if (null == starts) {
+                index = (int) (pos / recordSize);
+                recordPos = (int) (pos % recordSize);
+            } else {
+                index = findRecord(starts, pos);
+                recordPos = index < 0 ? 0 : (int) (pos - starts[index]);
+            }
+            if (index < 0 || index >= textRecords.getRecordCount()) {
+                break;
+            }
+            final DecodedRecord record = getRecord(index);
+            if (null == starts && record.length != recordSize && index < textRecords.getRecordCount() - 1) {
+                recordStarts = buildRecordStarts();
+                continue;
+            }
+            if (recordPos >= record.length) {
+                break;
+            }
+            final int count = Math.min(n - done, record.length - recordPos);
+            System.arraycopy(record.data, recordPos, out, outOffset + done, count);
+            done += count;
+        }
+        return done > 0 || n == 0 ? done : -1;
+    }
+
+    /**
+     * Builds the table of record start offsets, by decompressing all records without caching them.
+     * <p>
+     * Concurrent readers may build the table at the same time, resulting in equal tables.
+     *
+     * @return the start offset of each record, followed by the end offset of the last record.
+     */
+    private long[] buildRecordStarts() {
+        final int count = textRecords.getRecordCount();
+        final long[] starts = new long[count + 1];
+        final byte[] scratch = new byte[recordSize];
+        for (int i = 0; i < count; i++) {
+            starts[i + 1] = starts[i] + textRecords.read(i, scratch, 0);
+        }
+        return starts;
+    }
+
+    /**
+     * Finds the record containing a text offset.
+     *
+     * @param starts the record start table.
+     * @param pos    the text offset.
+     * @return the record index, or -1 if the offset is beyond the last record.
+     */
+    private static int findRecord(long[] starts, long pos) {
+        final int count = starts.length - 1;
+        if (pos >= starts[count]) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(starts, 0, count + 1, pos);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        // Skip records decompressing to zero bytes
+        while (starts[index + 1] <= pos) {
+            index++;
+        }
+        return index;
+    }
+
+    private DecodedRecord getRecord(int index) {
+        synchronized (cache) {
+            final DecodedRecord record = cache.get(index);
+            if (null != record) {
+                return record;
+            }
+        }
+        final byte[] data = new byte[recordSize];
+        final DecodedRecord record = new DecodedRecord(data, textRecords.read(index, data, 0));
+        synchronized (cache) {
+            cache.put(index, record);
+        }
+        return record;
+    }
+
+    private static final class DecodedRecord {
+        final byte[] data;
+        final int length;
+
+        DecodedRecord(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -51,4 +51,17 @@ public class StreamHelper {
         is.readFully(b);
         return new String(b, charset);
     }
+
+    /**
+     * Reads a four byte tag, e.g. a header identifier.
+     *
+     * @param is the input stream.
+     * @return the canonical tag, see {@link StringPool#tag(byte[])}.
+     * @throws IOException on io error.
+     */
+    public static String readTag(DataInputStream is) throws IOException {
+        byte[] b = new byte[4];
+        is.readFully(b);
+        return StringPool.tag(b);
+    }
 }
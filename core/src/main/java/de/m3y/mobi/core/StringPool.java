@@ -0,0 +1,93 @@
+package de.m3y.mobi.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Canonicalizes strings repeated across parsed headers, so headers share instances.
+ * <p>
+ * Known four byte tags, such as PDB type and creator or header identifiers, resolve to constants without allocation.
+ * Other values, such as EXTH languages or publishers, get interned in a bounded pool. The pool is direct mapped by
+ * hash code: a value replaces the value in its slot, so repeated values stay pooled and one-off values get evicted.
+ */
+public class StringPool {
+    public static final String BOOK = "BOOK";
+    public static final String MOBI = "MOBI";
+    public static final String TEXT = "TEXt";
+    public static final String READ = "REAd";
+    public static final String EXTH = "EXTH";
+    public static final String HUFF = "HUFF";
+    public static final String CDIC = "CDIC";
+    public static final String INDX = "INDX";
+
+    private static final String[] TAGS = {BOOK, MOBI, TEXT, READ, EXTH, HUFF, CDIC, INDX};
+    private static final int TAG_LENGTH = 4;
+    private static final int POOL_SIZE = 4096; // Power of two
+    private static final int MAX_POOLED_LENGTH = 64;
+    // Racy, but safe : strings are immutable, and a lost update only costs a duplicate instance
+    private static final String[] POOL = new String[POOL_SIZE];
+
+    private StringPool() {
+        // Not instantiable
+    }
+
+    /**
+     * Reads a four byte tag from buffer.
+     *
+     * @param buffer the buffer.
+     * @param offset the absolute offset.
+     * @return the known tag constant, or a new ISO-8859-1 decoded string.
+     */
+    public static String readTag(ByteBuffer buffer, int offset) {
+        for (String tag : TAGS) {
+            if (matches(tag, buffer.get(offset), buffer.get(offset + 1), buffer.get(offset + 2),
+                    buffer.get(offset + 3))) {
+                return tag;
+            }
+        }
+        return BufferHelper.readString(buffer, offset, TAG_LENGTH, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Canonicalizes a four byte tag.
+     *
+     * @param bytes the tag bytes.
+     * @return the known tag constant, or a new ISO-8859-1 decoded string.
+     */
+    public static String tag(byte[] bytes) {
+        if (bytes.length == TAG_LENGTH) {
+            for (String tag : TAGS) {
+                if (matches(tag, bytes[0], bytes[1], bytes[2], bytes[3])) {
+                    return tag;
+                }
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean matches(String tag, byte b0, byte b1, byte b2, byte b3) {
+        return tag.charAt(0) == b0 && tag.charAt(1) == b1 && tag.charAt(2) == b2 && tag.charAt(3) == b3;
+    }
+
+    /**
+     * Interns a string in the bounded pool, evicting the value of the same slot.
+     * <p>
+     * Long strings are returned as is.
+     *
+     * @param value the string, or null.
+     * @return the canonical instance.
+     */
+    public static String intern(String value) {
+        if (null == value || value.length() > MAX_POOLED_LENGTH) {
+            return value;
+        }
+        final int hash = value.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & (POOL_SIZE - 1);
+        final String pooled = POOL[slot];
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        POOL[slot] = value;
+        return value;
+    }
+}
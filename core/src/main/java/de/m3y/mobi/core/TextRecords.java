@@ -0,0 +1,243 @@
+package de.m3y.mobi.core;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads and decompresses the text records of a MOBI file.
+ * <p>
+ * Text records follow the record containing the MOBI header (record 0, or the KF8 boundary record), and decompress
+ * to at most {@link MobiHeader#recordSize} bytes each. Trailing entries (multibyte overlap and TBS indexing data)
+ * get stripped before decompression.
+ * <p>
+ * Example:
+ * <code>
+ * final TextRecords textRecords = new TextRecords(buffer, MobiHeader.read(buffer));
+ * final byte[] text = new byte[textRecords.getMaxRecordLength()];
+ * for (int i = 0; i &lt; textRecords.getRecordCount(); i++) {
+ * int length = textRecords.read(i, text, 0);
+ * ...
+ * }
+ * </code>
+ * <p>
+ * Reading into arrays is thread safe, see {@link #readAll(Executor)} for decompressing in parallel.
+ */
+public class TextRecords {
+    private static final int RECORDS_PER_TASK = 8;
+
+    private final ByteBuffer buffer;
+    private final MobiHeader header;
+    private final HuffCdic huffCdic;
+    private byte[] scratch;
+
+    /**
+     * Creates a reader for the text records.
+     *
+     * @param buffer the buffer containing the MOBI file, e.g. a mapped file.
+     * @param header the MOBI header read from the buffer, including the PDB records.
+     */
+    public TextRecords(ByteBuffer buffer, MobiHeader header) {
+        if (header.encryptionType != 0) {
+            throw new IllegalStateException("Encrypted text records are not supported, got encryption type "
+                    + header.encryptionType);
+        }
+        this.buffer = BufferHelper.bigEndian(buffer);
+        this.header = header;
+        huffCdic = MobiHeader.CompressionType.HUFF_CDIC_COMPRESSION == header.compression
+                ? HuffCdic.read(this.buffer, header) : null;
+    }
+
+    /**
+     * Gets the number of text records.
+     *
+     * @return the number of text records.
+     */
+    public int getRecordCount() {
+        return header.recordCount & 0xFFFF;
+    }
+
+    /**
+     * Gets the maximum decompressed length of a text record.
+     *
+     * @return the maximum length in bytes.
+     */
+    public int getMaxRecordLength() {
+        return header.recordSize & 0xFFFF;
+    }
+
+    /**
+     * Reads and decompresses a text record.
+     *
+     * @param index     the text record index, starting with 0 for the first text record.
+     * @param out       the output array, e.g. reused for all records.
+     * @param outOffset the offset in the output array.
+     * @return the number of decompressed bytes.
+     */
+    public int read(int index, byte[] out, int outOffset) {
+        if (index < 0 || index >= getRecordCount()) {
+            throw new IndexOutOfBoundsException("Text record index " + index + " out of range [0,"
+                    + getRecordCount() + ")");
+        }
+        final PalmDatabase.Header pdbHeader = header.palmDatabaseHeader;
+        final int recordIndex = header.headerRecordIndex + index + 1;
+        final int offset = pdbHeader.getRecordOffset(recordIndex);
+        int length = pdbHeader.getRecordLength(recordIndex, buffer.limit());
+        length -= getTrailingEntriesSize(buffer, offset, length, header.extraRecordDataFlags);
+
+        if (MobiHeader.CompressionType.NO_COMPRESSION == header.compression) {
+            if (length > getMaxRecordLength() || length > out.length - outOffset) {
+                throw new IllegalStateException("Text record " + index + " of " + length
+                        + " bytes exceeds maximum length");
+            }
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = buffer.get(offset + i);
+            }
+            return length;
+        }
+        if (MobiHeader.CompressionType.OLD_MOBIPOCKET_COMPRESSION == header.compression) {
+            return PalmDoc.decompress(buffer, offset, length, out, outOffset, getMaxRecordLength());
+        }
+        // Unknown compression types get rejected when reading the header, see CompressionType#convert(short)
+        return huffCdic.decompress(buffer, offset, length, out, outOffset, getMaxRecordLength());
+    }
+
+    /**
+     * Reads and decompresses a text record into the buffer, starting at the buffer position.
+     * <p>
+     * Advances the buffer position by the number of decompressed bytes.
+     *
+     * @param index the text record index, starting with 0 for the first text record.
+     * @param out   the output buffer.
+     * @return the number of decompressed bytes.
+     */
+    public int read(int index, ByteBuffer out) {
+        final int length;
+        if (out.hasArray()) {
+            length = read(index, out.array(), out.arrayOffset() + out.position());
+            ((Buffer) out).position(out.position() + length);
+        } else {
+            if (null == scratch) {
+                scratch = new byte[getMaxRecordLength()];
+            }
+            length = read(index, scratch, 0);
+            out.put(scratch, 0, length);
+        }
+        return length;
+    }
+
+    /**
+     * Reads and decompresses all text records in parallel, using the common fork join pool.
+     *
+     * @return the text.
+     * @see #readAll(Executor)
+     */
+    public byte[] readAll() {
+        return readAll(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads and decompresses all text records in parallel.
+     * <p>
+     * Every text record except the last one is expected to decompress to {@link #getMaxRecordLength()} bytes,
+     * so records get decompressed directly into their precomputed offset of the text.
+     * Shorter records get compacted afterwards.
+     *
+     * @param executor the executor, e.g. a {@link ForkJoinPool}.
+     * @return the text, limited to {@link MobiHeader#textLength} bytes.
+     */
+    public byte[] readAll(Executor executor) {
+        final int count = getRecordCount();
+        if (count == 0) {
+            return new byte[0];
+        }
+        final int slot = getMaxRecordLength();
+        final byte[] last = new byte[slot];
+        final int lastLength = read(count - 1, last, 0);
+        final long size = (long) (count - 1) * slot + lastLength;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Text of " + size + " bytes exceeds maximum array size");
+        }
+
+        final byte[] text = new byte[(int) size];
+        final int[] lengths = new int[count];
+        lengths[count - 1] = lastLength;
+        final CompletableFuture<?>[] tasks = new CompletableFuture<?>[(count - 1 + RECORDS_PER_TASK - 1)
+                / RECORDS_PER_TASK];
+        for (int t = 0; t < tasks.length; t++) {
+            final int from = t * RECORDS_PER_TASK;
+            final int to = Math.min(from + RECORDS_PER_TASK, count - 1);
+            tasks[t] = CompletableFuture.runAsync(() -> {
+                for (int i = from; i < to; i++) {
+                    lengths[i] = read(i, text, i * slot);
+                }
+            }, executor);
+        }
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+
+        // Compact, if any record is shorter than the slot
+        int pos = 0;
+        for (int i = 0; i < count - 1; i++) {
+            if (pos != i * slot) {
+                System.arraycopy(text, i * slot, text, pos, lengths[i]);
+            }
+            pos += lengths[i];
+        }
+        System.arraycopy(last, 0, text, pos, lastLength);
+        pos += lastLength;
+
+        final int textLength = (int) Math.min(pos, header.textLength & 0xFFFFFFFFL);
+        return textLength == text.length ? text : Arrays.copyOf(text, textLength);
+    }
+
+    /**
+     * Computes the size of trailing entries of a text record.
+     * <p>
+     * Each bit set in the extra record data flags, except for bit 0, denotes a trailing entry ending with its
+     * size as backward encoded variable width value. Bit 0 denotes multibyte character overlap bytes,
+     * stored innermost with the count in the lowest two bits of the last byte.
+     * <p>
+     * See <a href="https://wiki.mobileread.com/wiki/MOBI#Variable-width_integers">https://wiki.mobileread.com/wiki/MOBI#Variable-width_integers</a>
+     *
+     * @param buffer the buffer.
+     * @param offset the absolute offset of the record.
+     * @param length the record length including trailing entries.
+     * @param flags  the extra record data flags of the MOBI header.
+     * @return the size of all trailing entries in bytes.
+     */
+    public static int getTrailingEntriesSize(ByteBuffer buffer, int offset, int length, int flags) {
+        int size = 0;
+        for (int testFlags = flags >>> 1; testFlags != 0; testFlags >>>= 1) {
+            if ((testFlags & 1) != 0) {
+                size += getTrailingEntrySize(buffer, offset, length - size);
+            }
+        }
+        if ((flags & 1) != 0 && length - size > 0) {
+            size += (buffer.get(offset + length - size - 1) & 0x3) + 1;
+        }
+        return Math.min(size, length);
+    }
+
+    private static int getTrailingEntrySize(ByteBuffer buffer, int offset, int length) {
+        int result = 0;
+        for (int bitPos = 0, pos = offset + length - 1; pos >= offset && bitPos < 28; bitPos += 7, pos--) {
+            final int v = buffer.get(pos);
+            result |= (v & 0x7F) << bitPos;
+            if ((v & 0x80) != 0) {
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,45 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CoverImageTest {
+
+    @Test
+    public void testCover() throws IOException, URISyntaxException {
+        try (FileChannel channel = FileChannel.open(MobiHeaderTest.getFixturePath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final MobiHeader header = MobiHeader.read(buffer);
+            final int coverRecordIndex = CoverImage.getCoverRecordIndex(header);
+            assertEquals(340, coverRecordIndex);
+
+            final ByteBuffer cover = CoverImage.slice(buffer, header, coverRecordIndex);
+            assertEquals(header.palmDatabaseHeader.getRecordLength(coverRecordIndex, buffer.limit()),
+                    cover.remaining());
+            final byte[] expected = new byte[cover.remaining()];
+            cover.get(expected);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(expected.length,
+                    CoverImage.transferTo(channel, header, coverRecordIndex, Channels.newChannel(out)));
+            assertArrayEquals(expected, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void testNoCover() {
+        final MobiHeader header = new MobiHeader();
+        assertEquals(-1, CoverImage.getCoverRecordIndex(header));
+        assertEquals(-1, CoverImage.getThumbnailRecordIndex(header));
+    }
+}
@@ -0,0 +1,118 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class HuffCdicTest {
+    private static final int PHRASES = 257;
+    private static final int CDIC_OFFSET = 2048;
+
+    /**
+     * Creates a HUFF record at offset 0, followed by a CDIC record.
+     * <p>
+     * Phrases 0 to 254 use 8 bit codes (255 - phrase), phrases 255 and 256 use 9 bit codes 1 and 0.
+     * Phrase 3 is compressed itself, referencing phrases 0, 1 and 2.
+     */
+    private static ByteBuffer createHuffCdic() {
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        // HUFF
+        buffer.put("HUFF".getBytes(StandardCharsets.US_ASCII)).putInt(0x18).putInt(24).putInt(24 + 1024);
+        buffer.putInt(0).putInt(0);
+        buffer.putInt(8); // Code 0x00xxxxxx : not terminal, continue with code length 8
+        for (int i = 1; i < 256; i++) {
+            buffer.putInt((255 << 8) | 0x80 | 8);
+        }
+        for (int codeLength = 1; codeLength <= 32; codeLength++) {
+            if (codeLength == 8) {
+                buffer.putInt(1).putInt(255);
+            } else if (codeLength == 9) {
+                buffer.putInt(0).putInt(256);
+            } else {
+                buffer.putInt(0xFFFFFFFF).putInt(0);
+            }
+        }
+        // CDIC
+        final int cdicOffset = CDIC_OFFSET;
+        buffer.position(cdicOffset);
+        buffer.put("CDIC".getBytes(StandardCharsets.US_ASCII)).putInt(0x10).putInt(PHRASES).putInt(9);
+        final int phraseOffsetsPos = buffer.position();
+        buffer.position(phraseOffsetsPos + PHRASES * 2);
+        for (int phrase = 0; phrase < PHRASES; phrase++) {
+            buffer.putShort(phraseOffsetsPos + phrase * 2, (short) (buffer.position() - cdicOffset - 16));
+            final byte[] data;
+            boolean literal = true;
+            switch (phrase) {
+                case 0:
+                    data = "Hello".getBytes(StandardCharsets.US_ASCII);
+                    break;
+                case 1:
+                    data = " ".getBytes(StandardCharsets.US_ASCII);
+                    break;
+                case 2:
+                    data = "world".getBytes(StandardCharsets.US_ASCII);
+                    break;
+                case 3:
+                    data = encode(0, 1, 2);
+                    literal = false;
+                    break;
+                case 255:
+                    data = "!".getBytes(StandardCharsets.US_ASCII);
+                    break;
+                case 256:
+                    data = "\n".getBytes(StandardCharsets.US_ASCII);
+                    break;
+                default:
+                    data = "?".getBytes(StandardCharsets.US_ASCII);
+            }
+            buffer.putShort((short) (data.length | (literal ? 0x8000 : 0)));
+            buffer.put(data);
+        }
+        return buffer;
+    }
+
+    private static byte[] encode(int... phrases) {
+        long bits = 0;
+        int bitCount = 0;
+        final ByteBuffer out = ByteBuffer.allocate(64);
+        for (int phrase : phrases) {
+            final int codeLength = phrase < 255 ? 8 : 9;
+            final int code = phrase < 255 ? 255 - phrase : 256 - phrase;
+            bits = (bits << codeLength) | code;
+            bitCount += codeLength;
+            while (bitCount >= 8) {
+                out.put((byte) (bits >>> (bitCount - 8)));
+                bitCount -= 8;
+            }
+        }
+        if (bitCount > 0) {
+            out.put((byte) (bits << (8 - bitCount)));
+        }
+        final byte[] data = new byte[out.position()];
+        out.flip();
+        out.get(data);
+        return data;
+    }
+
+    @Test
+    public void testDecompress() {
+        final HuffCdic huffCdic = HuffCdic.read(createHuffCdic(), 0, CDIC_OFFSET);
+
+        final ByteBuffer text = ByteBuffer.wrap(encode(3, 255, 1, 3, 256));
+        final byte[] out = new byte[4096];
+        for (int i = 0; i < 2; i++) { // Second run uses expanded phrase
+            final int length = huffCdic.decompress(text, 0, text.capacity(), out, 0, out.length);
+            assertEquals("Hello world! Hello world\n", new String(out, 0, length, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDecompressExceedsMaxLength() {
+        final HuffCdic huffCdic = HuffCdic.read(createHuffCdic(), 0, CDIC_OFFSET);
+        final ByteBuffer text = ByteBuffer.wrap(encode(3, 3));
+        huffCdic.decompress(text, 0, text.capacity(), new byte[4096], 0, 12);
+    }
+}
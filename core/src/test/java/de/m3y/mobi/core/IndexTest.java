@@ -0,0 +1,172 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class IndexTest {
+    private static final int INDX_HEADER_LENGTH = 192;
+
+    @Test
+    public void testReadSynthetic() {
+        final ByteBuffer buffer = createIndex();
+        final Index index = Index.read(buffer, PalmDatabase.Header.read(buffer), 0, StandardCharsets.UTF_8);
+        assertEquals(3, index.size());
+        assertEquals(1, index.getCncxRecordCount());
+        assertEquals("apple", index.getKey(0));
+        assertEquals("banana", index.getKey(1));
+        assertEquals("cherry", index.getKey(2));
+
+        final Index.Entry apple = index.getEntry(0);
+        assertEquals(1000, apple.getTagValue(1, -1));
+        assertEquals(5, apple.getTagValue(2, -1));
+        assertEquals("Fruit", index.getCncxString(apple.getTagValue(3, -1)));
+        assertArrayEquals(new int[]{1, 2}, apple.getTagValues(6));
+
+        final Index.Entry banana = index.getEntry(1);
+        assertEquals(2000, banana.getTagValue(1, -1));
+        assertNull(banana.getTagValues(2));
+        assertEquals(-1, banana.getTagValue(3, -1));
+        assertArrayEquals(new int[]{3, 4, 300}, banana.getTagValues(6));
+
+        final Index.Entry cherry = index.getEntry(2);
+        assertEquals("Red", index.getCncxString(cherry.getTagValue(3, -1)));
+
+        assertEquals(1, index.find("banana"));
+        assertEquals(-1, index.find("aardvark"));
+        assertEquals(-3, index.find("blueberry"));
+        assertEquals(-4, index.find("date"));
+
+        final List<String> keys = new ArrayList<>();
+        for (Index.Entry entry : index) {
+            keys.add(entry.key);
+        }
+        assertEquals(Arrays.asList("apple", "banana", "cherry"), keys);
+    }
+
+    @Test
+    public void testReadNcx() throws IOException, URISyntaxException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(MobiHeaderTest.getFixturePath()));
+        final MobiFile file = MobiFile.read(buffer, new ParseOptions());
+        final MobiHeader header = file.kf8Header;
+        assertNotEquals(Index.NO_INDEX, header.ncxIndex);
+
+        final Index ncx = Index.read(buffer, header, header.ncxIndex);
+        int count = 0;
+        for (Index.Entry entry : ncx) {
+            assertEquals(ncx.getKey(count++), entry.key);
+        }
+        assertEquals(ncx.size(), count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadNoIndex() {
+        Index.read(ByteBuffer.allocate(0), new MobiHeader(), Index.NO_INDEX);
+    }
+
+    /**
+     * Creates a PDB with a main INDX record, two INDX records containing the entries, and a CNCX record.
+     */
+    private static ByteBuffer createIndex() {
+        final ByteArrayOutputStream tagx = new ByteArrayOutputStream();
+        writeInt(tagx, 0x54414758); // TAGX
+        writeInt(tagx, 12 + 5 * 4);
+        writeInt(tagx, 1);
+        tagx.write(new byte[]{1, 1, 0x01, 0, 2, 1, 0x02, 0, 3, 1, 0x04, 0, 6, 2, 0x30, 0, 0, 0, 0, 1}, 0, 20);
+
+        final byte[] main = indx(0, 2, 3, 1, tagx.toByteArray(), new byte[0][]);
+        final byte[] sub1 = indx(1, 0, 0, 0, new byte[0], new byte[][]{
+                entry("apple", 0x07 | 0x10, 0x07, 0xE8, 0x85, 0x80, 0x81, 0x82),
+                // Tag 6 with byte count: 4 bytes of values
+                entry("banana", 0x01 | 0x30, 0x84, 0x0F, 0xD0, 0x83, 0x84, 0x02, 0xAC)});
+        final byte[] sub2 = indx(1, 0, 0, 0, new byte[0], new byte[][]{entry("cherry", 0x04, 0x86)});
+        final byte[] cncx = {(byte) 0x85, 'F', 'r', 'u', 'i', 't', (byte) 0x83, 'R', 'e', 'd'};
+        return pdb(main, sub1, sub2, cncx);
+    }
+
+    private static byte[] entry(String key, int control, int... values) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes.length);
+        out.write(bytes, 0, bytes.length);
+        out.write(control);
+        for (int value : values) {
+            out.write(value);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] indx(int type, int count, int total, int cncxCount, byte[] tagx, byte[][] entries) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] positions = new int[entries.length];
+        int pos = INDX_HEADER_LENGTH + tagx.length;
+        for (int i = 0; i < entries.length; i++) {
+            positions[i] = pos;
+            pos += entries[i].length;
+        }
+        final int idxtStart = pos;
+
+        final int[] fields = new int[INDX_HEADER_LENGTH / 4];
+        fields[0] = 0x494E4458; // INDX
+        fields[1] = INDX_HEADER_LENGTH;
+        fields[3] = type;
+        fields[5] = idxtStart;
+        fields[6] = type == 0 ? count : entries.length;
+        fields[7] = 65001;
+        fields[9] = total;
+        fields[13] = cncxCount;
+        for (int field : fields) {
+            writeInt(out, field);
+        }
+        out.write(tagx, 0, tagx.length);
+        for (byte[] entry : entries) {
+            out.write(entry, 0, entry.length);
+        }
+        writeInt(out, 0x49445854); // IDXT
+        for (int position : positions) {
+            out.write(position >>> 8);
+            out.write(position);
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer pdb(byte[]... records) {
+        final int recordsOffset = PalmDatabase.Header.getLength(records.length);
+        int length = recordsOffset;
+        for (byte[] record : records) {
+            length += record.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort(76, (short) records.length);
+        int offset = recordsOffset;
+        for (int i = 0; i < records.length; i++) {
+            buffer.putInt(PalmDatabase.Header.LENGTH + i * PalmDatabase.Record.LENGTH, offset);
+            buffer.putInt(PalmDatabase.Header.LENGTH + i * PalmDatabase.Record.LENGTH + 4, i);
+            for (int j = 0; j < records[i].length; j++) {
+                buffer.put(offset + j, records[i][j]);
+            }
+            offset += records[i].length;
+        }
+        return buffer;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
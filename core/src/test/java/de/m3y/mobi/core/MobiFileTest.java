@@ -0,0 +1,39 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MobiFileTest {
+
+    @Test
+    public void testReadHybrid() throws IOException, URISyntaxException {
+        final MobiFile file = MobiFile.read(MobiHeaderTest.getFixturePath());
+        assertTrue(file.isHybrid());
+        assertEquals(0, file.header.headerRecordIndex);
+        assertEquals(6, file.header.fileVersion);
+
+        final MobiHeader kf8Header = file.kf8Header;
+        assertEquals(file.header.exthHeader.getInt(MobiHeader.Exth.RecordType.KF8_BOUNDARY_OFFSET),
+                kf8Header.headerRecordIndex);
+        assertEquals(8, kf8Header.fileVersion);
+        assertEquals("MOBI", kf8Header.identifier);
+        assertSame(file.header.palmDatabaseHeader, kf8Header.palmDatabaseHeader);
+        assertNotNull(kf8Header.exthHeader);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReadHeaderRecordIndexOutOfRange() throws IOException, URISyntaxException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(MobiHeaderTest.getFixturePath()));
+        final PalmDatabase.Header palmDatabaseHeader = PalmDatabase.Header.read(buffer);
+        MobiHeader.read(buffer, palmDatabaseHeader, palmDatabaseHeader.numRecords & 0xFFFF, new ParseOptions());
+    }
+}
@@ -0,0 +1,167 @@
+package de.m3y.mobi.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MobiFormatFuzzTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int ITERATIONS = 5000;
+
+    private static ParseOptions validating() {
+        return new ParseOptions().validate(true).maxExthRecords(256).maxExthLength(64 * 1024);
+    }
+
+    @Test
+    public void testValidFile() throws IOException, URISyntaxException {
+        final byte[] data = Files.readAllBytes(MobiHeaderTest.getFixturePath());
+        final MobiHeader expected = MobiHeader.read(ByteBuffer.wrap(data));
+
+        final MobiHeader header = MobiHeader.read(ByteBuffer.wrap(data), validating());
+        assertEquals(expected.toString(), header.toString());
+        final MobiHeader streamed = MobiHeader.read(new DataInputStream(new ByteArrayInputStream(data)),
+                validating());
+        assertEquals(expected.exthHeader.recordCount, streamed.exthHeader.recordCount);
+    }
+
+    @Test
+    public void testValidHeaderPrefix() throws Exception {
+        final MobiHeader expected = MobiHeader.read(MobiHeaderTest.getFixturePath(), validating());
+        assertEquals(expected.toString(), MobiHeader.readAsync(MobiHeaderTest.getFixturePath(), validating()).get()
+                .toString());
+
+        final Path book = folder.getRoot().toPath().resolve("book.mobi");
+        Files.copy(MobiHeaderTest.getFixturePath(), book);
+        final Path cacheFile = folder.getRoot().toPath().resolve("headers.cache");
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, validating(), 0)) {
+            cache.read(book);
+        }
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, validating(), 0)) {
+            assertEquals(expected.toString(), cache.read(book).toString());
+        }
+    }
+
+    @Test
+    public void testMutatedHeaders() throws IOException, URISyntaxException {
+        final byte[] data = Files.readAllBytes(MobiHeaderTest.getFixturePath());
+        final MobiHeader header = MobiHeader.read(ByteBuffer.wrap(data));
+        final int headerEnd = PalmDatabase.Header.getLength(header.palmDatabaseHeader.numRecords) + 16
+                + header.headerLength + (header.hasExth ? header.exthHeader.headerLength : 0);
+
+        final Random random = new Random(42);
+        for (int i = 0; i < ITERATIONS; i++) {
+            final byte[] mutated = mutate(data, headerEnd, random);
+            try {
+                MobiHeader.read(ByteBuffer.wrap(mutated), validating());
+            } catch (MobiFormatException ex) {
+                // Expected
+            } catch (Throwable ex) {
+                throw new AssertionError("Unexpected exception in iteration " + i + " reading buffer", ex);
+            }
+            try {
+                MobiHeader.read(new DataInputStream(new ByteArrayInputStream(mutated)), validating());
+            } catch (MobiFormatException | EOFException ex) {
+                // Expected
+            } catch (Throwable ex) {
+                throw new AssertionError("Unexpected exception in iteration " + i + " reading stream", ex);
+            }
+        }
+    }
+
+    @Test
+    public void testNumRecordsExceedsFile() throws IOException, URISyntaxException {
+        final byte[] data = Arrays.copyOf(Files.readAllBytes(MobiHeaderTest.getFixturePath()), 1024);
+        data[76] = (byte) 0xFF;
+        data[77] = (byte) 0xFF;
+        try {
+            MobiHeader.read(ByteBuffer.wrap(data), validating());
+            fail("Expected MobiFormatException");
+        } catch (MobiFormatException ex) {
+            assertEquals("numRecords", ex.field);
+            assertEquals(0xFFFF, ex.value);
+        }
+    }
+
+    @Test
+    public void testExthLengthBoundedWithoutValidation() throws IOException, URISyntaxException {
+        final byte[] data = Files.readAllBytes(MobiHeaderTest.getFixturePath());
+        final MobiHeader expected = MobiHeader.read(ByteBuffer.wrap(data));
+        final int exthOffset = PalmDatabase.Header.getLength(expected.palmDatabaseHeader.numRecords) + 16
+                + expected.headerLength;
+
+        // Corrupt EXTH header length, but intact records
+        final ByteBuffer corrupt = ByteBuffer.wrap(data.clone());
+        corrupt.putInt(exthOffset + 4, 0x7FFFFFF0);
+        final MobiHeader header = MobiHeader.read(new DataInputStream(new ByteArrayInputStream(corrupt.array())));
+        assertEquals(expected.exthHeader.recordCount, header.exthHeader.recordCount);
+
+        // Corrupt length of the first record
+        corrupt.putInt(exthOffset + 16, 0x7FFFFFF0);
+        try {
+            MobiHeader.read(new DataInputStream(new ByteArrayInputStream(corrupt.array())));
+            fail("Expected MobiFormatException");
+        } catch (MobiFormatException ex) {
+            assertEquals("exthHeader.records[0].length", ex.field);
+        }
+    }
+
+    @Test
+    public void testAsyncHeaderLengthsBounded() throws Exception {
+        final byte[] data = Files.readAllBytes(MobiHeaderTest.getFixturePath());
+        final MobiHeader expected = MobiHeader.read(ByteBuffer.wrap(data));
+        final int record0 = PalmDatabase.Header.getLength(expected.palmDatabaseHeader.numRecords);
+        final int exthOffset = record0 + 16 + expected.headerLength;
+
+        assertAsyncFails(data, record0 + 20, 0x70, "headerLength");
+        assertAsyncFails(data, record0 + 20, 0x7FFFFFF0, "headerLength");
+        assertAsyncFails(data, exthOffset + 4, 0x7FFFFFF0, "exthHeader.headerLength");
+    }
+
+    private void assertAsyncFails(byte[] data, int offset, int value, String field) throws Exception {
+        final ByteBuffer corrupt = ByteBuffer.wrap(data.clone());
+        corrupt.putInt(offset, value);
+        final Path book = folder.newFile().toPath();
+        Files.write(book, corrupt.array());
+        try {
+            MobiHeader.readAsync(book).get();
+            fail("Expected MobiFormatException");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof MobiFormatException);
+            assertEquals(field, ((MobiFormatException) ex.getCause()).field);
+        }
+    }
+
+    /**
+     * Overwrites one to four bytes within the header region, sometimes truncating the file.
+     */
+    private static byte[] mutate(byte[] data, int headerEnd, Random random) {
+        final byte[] mutated = random.nextInt(8) == 0 ? Arrays.copyOf(data, random.nextInt(headerEnd))
+                : data.clone();
+        if (mutated.length == 0) {
+            return mutated;
+        }
+        final int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            mutated[random.nextInt(Math.min(headerEnd, mutated.length))] = (byte) random.nextInt(256);
+        }
+        return mutated;
+    }
+}
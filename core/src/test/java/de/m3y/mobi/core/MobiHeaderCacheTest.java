@@ -0,0 +1,114 @@
+package de.m3y.mobi.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MobiHeaderCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCache() throws IOException, URISyntaxException {
+        final Path book = folder.getRoot().toPath().resolve("book.mobi");
+        Files.copy(MobiHeaderTest.getFixturePath(), book);
+        final FileTime lastModified = Files.getLastModifiedTime(book);
+        final Path cacheFile = folder.getRoot().toPath().resolve("headers.cache");
+
+        for (ParseOptions options : new ParseOptions[]{
+                new ParseOptions().skipRecords(true), new ParseOptions().lazyExth(true)}) {
+            final MobiHeader expected = MobiHeader.read(book, options);
+            Files.deleteIfExists(cacheFile);
+            try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 10)) {
+                final MobiHeader header = cache.read(book);
+                assertEquals(expected.toString(), header.toString());
+                assertSame(header, cache.read(book));
+            }
+
+            // Changed content, but same size and last modified time : read from cache file
+            try (FileChannel channel = FileChannel.open(book, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap("Changed".getBytes(StandardCharsets.US_ASCII)), 0);
+            }
+            Files.setLastModifiedTime(book, lastModified);
+            try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 10)) {
+                final MobiHeader header = cache.read(book);
+                assertEquals(expected.toString(), header.toString());
+                assertEquals("en", header.exthHeader.getRecordByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE).data);
+
+                // Changed last modified time : read from MOBI file
+                Files.setLastModifiedTime(book, FileTime.fromMillis(lastModified.toMillis() + 1000));
+                final MobiHeader changed = cache.read(book);
+                assertNotSame(header, changed);
+                assertEquals("Changed", changed.palmDatabaseHeader.name);
+            }
+            Files.copy(MobiHeaderTest.getFixturePath(), book, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(book, lastModified);
+        }
+    }
+
+    @Test
+    public void testCacheFileLength() throws IOException, URISyntaxException {
+        final Path book = folder.getRoot().toPath().resolve("book.mobi");
+        Files.copy(MobiHeaderTest.getFixturePath(), book);
+        final Path cacheFile = folder.getRoot().toPath().resolve("headers.cache");
+        final ParseOptions options = new ParseOptions().compactRecords(true);
+        final PalmDatabase.RecordTable expected = MobiHeader.read(book, options).palmDatabaseHeader.recordTable;
+        final int last = expected.size() - 1;
+
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 10)) {
+            cache.read(book);
+        }
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 10)) {
+            final PalmDatabase.RecordTable table = cache.read(book).palmDatabaseHeader.recordTable;
+            assertEquals(expected.recordLength(last), table.recordLength(last));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException, URISyntaxException {
+        final Path book = folder.getRoot().toPath().resolve("book.mobi");
+        Files.copy(MobiHeaderTest.getFixturePath(), book);
+        final Path cacheFile = folder.getRoot().toPath().resolve("headers.cache");
+        final ParseOptions options = new ParseOptions().skipRecords(true);
+        final FileTime lastModified = Files.getLastModifiedTime(book);
+
+        // Each changed last modified time supersedes the previous entry
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 0)) {
+            for (int i = 0; i < 3; i++) {
+                Files.setLastModifiedTime(book, FileTime.fromMillis(lastModified.toMillis() + i * 1000));
+                cache.read(book);
+            }
+        }
+        final long size = Files.size(cacheFile);
+        MobiHeaderCache.open(cacheFile, options, 0).close();
+        assertTrue(Files.size(cacheFile) < size / 2);
+
+        // Current entry kept : changed content, but same size and last modified time
+        try (FileChannel channel = FileChannel.open(book, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("Changed".getBytes(StandardCharsets.US_ASCII)), 0);
+        }
+        Files.setLastModifiedTime(book, FileTime.fromMillis(lastModified.toMillis() + 2000));
+        try (MobiHeaderCache cache = MobiHeaderCache.open(cacheFile, options, 0)) {
+            assertEquals(MobiHeader.read(MobiHeaderTest.getFixturePath()).palmDatabaseHeader.name,
+                    cache.read(book).palmDatabaseHeader.name);
+        }
+        assertFalse(Files.exists(cacheFile.resolveSibling("headers.cache.compact")));
+    }
+}
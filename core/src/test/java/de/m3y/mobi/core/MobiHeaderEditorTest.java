@@ -0,0 +1,89 @@
+package de.m3y.mobi.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MobiHeaderEditorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEditInPlace() throws IOException, URISyntaxException {
+        final Path book = copyFixture();
+        final long size = Files.size(book);
+        final MobiHeader expected = MobiHeader.read(book);
+        try (FileChannel channel = FileChannel.open(book, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MobiHeaderEditor editor = MobiHeaderEditor.read(channel, 0);
+            final String title = editor.getTitle();
+            final byte[] language = editor.getBytes(MobiHeader.Exth.RecordType.LANGUAGE);
+            editor.setTitle("Git").setString(MobiHeader.Exth.RecordType.LANGUAGE, "de");
+            assertTrue(editor.write());
+            assertEquals("Git", editor.getTitle());
+            assertEquals("de", editor.getString(MobiHeader.Exth.RecordType.LANGUAGE));
+
+            // Restore
+            editor.setTitle(title).setBytes(MobiHeader.Exth.RecordType.LANGUAGE, language);
+            assertTrue(editor.write());
+        }
+        assertEquals(size, Files.size(book));
+
+        final MobiHeader header = MobiHeader.read(book);
+        assertEquals(expected.exthHeader.recordCount, header.exthHeader.recordCount);
+        assertEquals(expected.exthHeader.getString(MobiHeader.Exth.RecordType.LANGUAGE),
+                header.exthHeader.getString(MobiHeader.Exth.RecordType.LANGUAGE));
+        assertEquals(expected.fullNameOffset, header.fullNameOffset);
+        assertEquals(expected.fullNameLength, header.fullNameLength);
+    }
+
+    @Test
+    public void testEditShiftingRecords() throws IOException, URISyntaxException {
+        final Path book = copyFixture();
+        final MobiHeader expected = MobiHeader.read(book);
+        final byte[] expectedText = readText(book);
+        final char[] author = new char[100000];
+        Arrays.fill(author, 'a');
+
+        try (FileChannel channel = FileChannel.open(book, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MobiHeaderEditor editor = MobiHeaderEditor.read(channel, 0);
+            editor.setTitle("Pro Git, 2nd Edition").addString(MobiHeader.Exth.RecordType.AUTHOR, new String(author));
+            assertFalse(editor.write());
+        }
+
+        final MobiHeader header = MobiHeader.read(book);
+        assertEquals(expected.exthHeader.recordCount + 1, header.exthHeader.recordCount);
+        final MobiHeader.Exth.Record[] authors =
+                header.exthHeader.getRecordsByTypeCode(MobiHeader.Exth.RecordType.AUTHOR);
+        assertEquals(new String(author), authors[authors.length - 1].data);
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(book));
+        assertEquals("Pro Git, 2nd Edition",
+                BufferHelper.readString(buffer, header.palmDatabaseHeader.getRecordOffset(0) + header.fullNameOffset,
+                        header.fullNameLength, header.encoding));
+        assertArrayEquals(expectedText, readText(book));
+    }
+
+    private Path copyFixture() throws IOException, URISyntaxException {
+        final Path book = folder.getRoot().toPath().resolve("book.mobi");
+        Files.copy(MobiHeaderTest.getFixturePath(), book);
+        return book;
+    }
+
+    private static byte[] readText(Path book) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(book));
+        return new TextRecords(buffer, MobiHeader.read(buffer)).readAll();
+    }
+}
@@ -5,9 +5,23 @@ import org.junit.Test;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MobiHeaderTest {
 
@@ -98,4 +112,259 @@ public class MobiHeaderTest {
             assertEquals("en", header.exthHeader.getRecordByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE).data);
         }
     }
+
+    @Test
+    public void testReadMobiHeaderFromPath() throws IOException, URISyntaxException {
+        final MobiHeader expected = readFromStream();
+        final MobiHeader header = MobiHeader.read(getFixturePath());
+        assertSameHeader(expected, header);
+    }
+
+    @Test
+    public void testReadMobiHeaderFromByteBuffer() throws IOException, URISyntaxException {
+        final MobiHeader expected = readFromStream();
+        final MobiHeader header = MobiHeader.read(ByteBuffer.wrap(Files.readAllBytes(getFixturePath())));
+        assertSameHeader(expected, header);
+    }
+
+    @Test
+    public void testReadMobiHeaderAsync() throws Exception {
+        final MobiHeader expected = readFromStream();
+        assertSameHeader(expected, MobiHeader.readAsync(getFixturePath()).get());
+
+        final ParseOptions options = new ParseOptions().skipRecords(true);
+        assertEquals(MobiHeader.read(getFixturePath(), options).toString(),
+                MobiHeader.readAsync(getFixturePath(), options).get().toString());
+
+        // Record table knows the file length, not only the length of the header bytes read
+        final ParseOptions compact = new ParseOptions().compactRecords(true);
+        final PalmDatabase.RecordTable expectedTable = MobiHeader.read(getFixturePath(), compact)
+                .palmDatabaseHeader.recordTable;
+        final PalmDatabase.RecordTable table = MobiHeader.readAsync(getFixturePath(), compact).get()
+                .palmDatabaseHeader.recordTable;
+        final int last = table.size() - 1;
+        assertEquals(expectedTable.recordLength(last), table.recordLength(last));
+    }
+
+    @Test
+    public void testReadMobiHeaderAsyncMissingFile() throws InterruptedException {
+        try {
+            MobiHeader.readAsync(Paths.get("does-not-exist.mobi")).get();
+            fail("Expected ExecutionException");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof NoSuchFileException);
+        }
+    }
+
+    @Test
+    public void testExthIndependentOfBuffer() throws IOException, URISyntaxException {
+        final byte[] data = Files.readAllBytes(getFixturePath());
+        final MobiHeader header = MobiHeader.read(ByteBuffer.wrap(data));
+        final String language = header.exthHeader.getString(MobiHeader.Exth.RecordType.LANGUAGE);
+        final byte[] author = header.exthHeader.getBytes(MobiHeader.Exth.RecordType.AUTHOR);
+
+        // Not lazy : record data got copied
+        Arrays.fill(data, (byte) 0);
+        assertEquals(language, header.exthHeader.getString(MobiHeader.Exth.RecordType.LANGUAGE));
+        assertArrayEquals(author, header.exthHeader.getBytes(MobiHeader.Exth.RecordType.AUTHOR));
+    }
+
+    @Test
+    public void testReadLazyExth() throws IOException, URISyntaxException {
+        final MobiHeader.Exth.Header expected = readFromStream().exthHeader;
+        final ParseOptions options = new ParseOptions().lazyExth(true);
+
+        final MobiHeader.Exth.Header fromPath = MobiHeader.read(getFixturePath(), options).exthHeader;
+        final MobiHeader.Exth.Header fromStream;
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                getClass().getResourceAsStream("/progit-en.984.mobi")))) {
+            fromStream = MobiHeader.read(is, options).exthHeader;
+        }
+
+        for (MobiHeader.Exth.Header lazy : new MobiHeader.Exth.Header[]{fromPath, fromStream}) {
+            assertNull(lazy.records);
+            assertEquals(expected.recordCount, lazy.recordCount);
+            assertEquals(expected.headerLength, lazy.headerLength);
+            for (int i = 0; i < expected.recordCount; i++) {
+                assertEquals(expected.records[i].toString(), lazy.getRecord(i).toString());
+            }
+            assertEquals("en", lazy.getRecordByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE).data);
+            assertNull(lazy.getRecordByTypeCode(MobiHeader.Exth.RecordType.ISBN));
+        }
+    }
+
+    @Test
+    public void testReadSelective() throws IOException, URISyntaxException {
+        final MobiHeader expected = readFromStream();
+        final ParseOptions options = new ParseOptions().skipRecords(true)
+                .exthRecordTypes(MobiHeader.Exth.RecordType.LANGUAGE, MobiHeader.Exth.RecordType.ISBN);
+
+        final MobiHeader fromPath = MobiHeader.read(getFixturePath(), options);
+        final MobiHeader fromStream;
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                getClass().getResourceAsStream("/progit-en.984.mobi")))) {
+            fromStream = MobiHeader.read(is, options);
+        }
+
+        for (MobiHeader header : new MobiHeader[]{fromPath, fromStream}) {
+            assertNull(header.palmDatabaseHeader.records);
+            assertEquals(expected.palmDatabaseHeader.numRecords, header.palmDatabaseHeader.numRecords);
+            assertEquals(expected.mobiType, header.mobiType);
+            assertEquals(expected.firstImageIndex, header.firstImageIndex);
+            assertEquals(1, header.exthHeader.recordCount);
+            assertEquals("en", header.exthHeader.records[0].data);
+            assertNull(header.exthHeader.getRecordByTypeCode(MobiHeader.Exth.RecordType.AUTHOR));
+        }
+    }
+
+    @Test
+    public void testReadCompactRecords() throws IOException, URISyntaxException {
+        final PalmDatabase.Header expected = readFromStream().palmDatabaseHeader;
+        final ParseOptions options = new ParseOptions().compactRecords(true);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(getFixturePath()));
+        final PalmDatabase.Header fromBuffer = MobiHeader.read(buffer, options).palmDatabaseHeader;
+        final PalmDatabase.Header fromStream;
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                getClass().getResourceAsStream("/progit-en.984.mobi")))) {
+            fromStream = MobiHeader.read(is, options).palmDatabaseHeader;
+        }
+
+        for (PalmDatabase.Header header : new PalmDatabase.Header[]{fromBuffer, fromStream}) {
+            assertNull(header.records);
+            final PalmDatabase.RecordTable table = header.recordTable;
+            assertEquals(expected.records.length, table.size());
+            assertEquals(Arrays.toString(expected.records), Arrays.toString(table.toRecords()));
+            for (int i = 0; i < table.size(); i++) {
+                assertEquals(expected.getRecordLength(i, buffer.limit()), header.getRecordLength(i, buffer.limit()));
+            }
+        }
+        final int last = fromBuffer.recordTable.size() - 1;
+        assertEquals(expected.getRecordLength(last, buffer.limit()), fromBuffer.recordTable.recordLength(last));
+    }
+
+    @Test
+    public void testSharedStrings() throws IOException, URISyntaxException {
+        final MobiHeader fromStream = readFromStream();
+        final MobiHeader fromPath = MobiHeader.read(getFixturePath());
+        assertSame(StringPool.BOOK, fromStream.palmDatabaseHeader.type);
+        assertSame(StringPool.MOBI, fromPath.palmDatabaseHeader.creator);
+        assertSame(fromStream.identifier, fromPath.identifier);
+        assertSame(fromStream.exthHeader.identifier, fromPath.exthHeader.identifier);
+        assertSame(fromStream.exthHeader.getRecordByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE).data,
+                fromPath.exthHeader.getRecordByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE).data);
+    }
+
+    @Test
+    public void testStringPoolEvicts() {
+        // One-off values do not stop repeated values from being pooled
+        for (int i = 0; i < 100000; i++) {
+            StringPool.intern("author-" + i);
+        }
+        final String language = StringPool.intern(new String("de-CH"));
+        assertSame(language, StringPool.intern(new String("de-CH")));
+
+        final String author = new String("Scott Chacon");
+        assertSame(author, MobiHeader.Exth.Record.canonicalize(MobiHeader.Exth.RecordType.AUTHOR, author));
+    }
+
+    @Test
+    public void testRecordTypeRegistry() {
+        assertEquals("COVER_OFFSET", MobiHeader.Exth.RecordType.getLabel(MobiHeader.Exth.RecordType.COVER_OFFSET));
+        assertEquals("UNKNOWN", MobiHeader.Exth.RecordType.getLabel(999));
+        assertEquals("UNKNOWN", MobiHeader.Exth.RecordType.getLabel(-1));
+        assertEquals(MobiHeader.Exth.RecordType.LANGUAGE, MobiHeader.Exth.RecordType.getTypeCode("LANGUAGE"));
+        assertEquals(-1, MobiHeader.Exth.RecordType.getTypeCode("NO_SUCH_TYPE"));
+        assertEquals(MobiHeader.Exth.ValueType.INT,
+                MobiHeader.Exth.RecordType.getValueType(MobiHeader.Exth.RecordType.COVER_OFFSET));
+        assertEquals(MobiHeader.Exth.ValueType.STRING,
+                MobiHeader.Exth.RecordType.getValueType(MobiHeader.Exth.RecordType.AUTHOR));
+        assertEquals(MobiHeader.Exth.ValueType.STRING, MobiHeader.Exth.RecordType.getValueType(999));
+
+        assertEquals(MobiHeader.MobiType.KF8_GENERATED_BY_KINDLEGEN_2, MobiHeader.MobiType.convert(248));
+        assertEquals(MobiHeader.CompressionType.HUFF_CDIC_COMPRESSION,
+                MobiHeader.CompressionType.convert((short) 17480));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertUnknownMobiType() {
+        MobiHeader.MobiType.convert(1000);
+    }
+
+    @Test
+    public void testTypedAccessors() throws IOException, URISyntaxException {
+        for (MobiHeader header : new MobiHeader[]{readFromStream(), MobiHeader.read(getFixturePath())}) {
+            final MobiHeader.Exth.Header exth = header.exthHeader;
+            assertEquals(0, exth.getInt(MobiHeader.Exth.RecordType.COVER_OFFSET));
+            assertEquals(-1, exth.getInt(MobiHeader.Exth.RecordType.ISBN));
+            assertEquals(7, exth.getInt(MobiHeader.Exth.RecordType.ISBN, 7));
+            assertEquals("en", exth.getString(MobiHeader.Exth.RecordType.LANGUAGE));
+            assertNull(exth.getString(MobiHeader.Exth.RecordType.ISBN));
+            assertArrayEquals(new byte[]{0, 0, 0, 0}, exth.getBytes(MobiHeader.Exth.RecordType.COVER_OFFSET));
+            assertNull(exth.getBytes(MobiHeader.Exth.RecordType.ISBN));
+        }
+    }
+
+    @Test
+    public void testGetRecordsByTypeCode() {
+        final ByteBuffer buffer = createExth(
+                MobiHeader.Exth.RecordType.AUTHOR, "Scott Chacon",
+                MobiHeader.Exth.RecordType.LANGUAGE, "en",
+                MobiHeader.Exth.RecordType.AUTHOR, "Ben Straub");
+
+        for (MobiHeader.Exth.Header exth : new MobiHeader.Exth.Header[]{
+                MobiHeader.Exth.Header.read(buffer, 0, StandardCharsets.UTF_8),
+                MobiHeader.Exth.Header.readLazy(buffer, 0, StandardCharsets.UTF_8)}) {
+            final MobiHeader.Exth.Record[] authors =
+                    exth.getRecordsByTypeCode(MobiHeader.Exth.RecordType.AUTHOR);
+            assertEquals(2, authors.length);
+            assertEquals("Scott Chacon", authors[0].data);
+            assertEquals("Ben Straub", authors[1].data);
+            assertEquals("Scott Chacon", exth.getRecordByTypeCode(MobiHeader.Exth.RecordType.AUTHOR).data);
+            assertEquals("en", exth.getRecordsByTypeCode(MobiHeader.Exth.RecordType.LANGUAGE)[0].data);
+            assertEquals(0, exth.getRecordsByTypeCode(MobiHeader.Exth.RecordType.ISBN).length);
+        }
+    }
+
+    /**
+     * Creates an EXTH header.
+     *
+     * @param typeCodesAndValues pairs of type code and string value.
+     * @return the buffer containing the EXTH header at offset 0.
+     */
+    static ByteBuffer createExth(Object... typeCodesAndValues) {
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put("EXTH".getBytes(StandardCharsets.US_ASCII));
+        buffer.putInt(0); // Length
+        buffer.putInt(typeCodesAndValues.length / 2);
+        for (int i = 0; i < typeCodesAndValues.length; i += 2) {
+            final byte[] data = ((String) typeCodesAndValues[i + 1]).getBytes(StandardCharsets.UTF_8);
+            buffer.putInt((Integer) typeCodesAndValues[i]);
+            buffer.putInt(data.length + 8);
+            buffer.put(data);
+        }
+        buffer.putInt(4, buffer.position());
+        return buffer;
+    }
+
+    static Path getFixturePath() throws URISyntaxException {
+        return Paths.get(MobiHeaderTest.class.getResource("/progit-en.984.mobi").toURI());
+    }
+
+    private MobiHeader readFromStream() throws IOException {
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                getClass().getResourceAsStream("/progit-en.984.mobi")))) {
+            return MobiHeader.read(is);
+        }
+    }
+
+    private static void assertSameHeader(MobiHeader expected, MobiHeader actual) {
+        assertEquals(expected.toString(), actual.toString());
+        final PalmDatabase.Record[] expectedRecords = expected.palmDatabaseHeader.records;
+        final PalmDatabase.Record[] actualRecords = actual.palmDatabaseHeader.records;
+        assertEquals(expectedRecords.length, actualRecords.length);
+        for (int i = 0; i < expectedRecords.length; i++) {
+            assertEquals(expectedRecords[i].toString(), actualRecords[i].toString());
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package de.m3y.mobi.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MobiScannerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScan() throws IOException, URISyntaxException {
+        final Path root = folder.getRoot().toPath();
+        final Path dir = Files.createDirectories(root.resolve("a").resolve("b"));
+        for (int i = 0; i < 5; i++) {
+            Files.copy(MobiHeaderTest.getFixturePath(), dir.resolve("book-" + i + ".mobi"));
+        }
+        Files.write(root.resolve("a").resolve("broken.azw"), "broken".getBytes(StandardCharsets.US_ASCII));
+        Files.write(root.resolve("ignored.txt"), "ignored".getBytes(StandardCharsets.US_ASCII));
+
+        final Map<Path, MobiScanner.Result> results = new ConcurrentHashMap<>();
+        new MobiScanner(new ParseOptions().skipRecords(true), 2).scan(root, result -> results.put(result.path, result));
+
+        assertEquals(6, results.size());
+        for (int i = 0; i < 5; i++) {
+            final MobiScanner.Result result = results.get(dir.resolve("book-" + i + ".mobi"));
+            assertNull(result.error);
+            assertEquals(MobiHeader.MobiType.MOBIPOCKET_BOOK, result.header.mobiType);
+        }
+        final MobiScanner.Result broken = results.get(root.resolve("a").resolve("broken.azw"));
+        assertNull(broken.header);
+        assertNotNull(broken.error);
+        assertFalse(results.containsKey(root.resolve("ignored.txt")));
+    }
+}
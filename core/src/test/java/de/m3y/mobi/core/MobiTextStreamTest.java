@@ -0,0 +1,95 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MobiTextStreamTest {
+
+    @Test
+    public void testReadText() throws IOException, URISyntaxException {
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (MobiTextStream stream = MobiTextStream.open(MobiHeaderTest.getFixturePath())) {
+            final byte[] buffer = new byte[1000]; // Not aligned with record size
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                text.write(buffer, 0, n);
+            }
+            assertEquals(-1, stream.read());
+        }
+        final MobiHeader header = MobiHeader.read(MobiHeaderTest.getFixturePath());
+        assertEquals(header.textLength, text.size());
+    }
+
+    @Test
+    public void testReader() throws IOException, URISyntaxException {
+        long chars = 0;
+        try (Reader reader = MobiTextStream.open(MobiHeaderTest.getFixturePath()).toReader()) {
+            final char[] buffer = new char[4096];
+            int n;
+            while ((n = reader.read(buffer)) >= 0) {
+                chars += n;
+            }
+        }
+        assertTrue(chars > 0);
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException, URISyntaxException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MobiTextStream stream = MobiTextStream.open(MobiHeaderTest.getFixturePath())) {
+            final byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        final byte[] text = out.toByteArray();
+
+        final RandomAccessText randomAccessText = RandomAccessText.open(MobiHeaderTest.getFixturePath());
+        assertEquals(text.length, randomAccessText.length());
+        final int[] offsets = {0, 4000, 4096, text.length / 2, 4095, text.length - 10};
+        for (int offset : offsets) {
+            // Including ranges spanning a record boundary
+            assertArrayEquals(Arrays.copyOfRange(text, offset, Math.min(offset + 200, text.length)),
+                    randomAccessText.read(offset, 200));
+        }
+        assertEquals(0, randomAccessText.read(text.length, 10).length);
+        assertEquals(-1, randomAccessText.read(text.length, new byte[10], 0, 10));
+    }
+
+    @Test
+    public void testRandomAccessShortRecords() {
+        // Text records may decompress to less than the record size, not only the last one
+        final int[] lengths = {100, 4096, 0, 3000, 4096, 50};
+        final byte[][] records = new byte[lengths.length][];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < lengths.length; i++) {
+            records[i] = new byte[lengths[i]];
+            for (int j = 0; j < lengths[i]; j++) {
+                records[i][j] = (byte) ('a' + (i * 7 + j) % 26);
+            }
+            out.write(records[i], 0, lengths[i]);
+        }
+        final byte[] text = out.toByteArray();
+        final ByteBuffer buffer = PalmDocTest.createBook(1, 4096, text.length, records);
+
+        final RandomAccessText randomAccessText = new RandomAccessText(buffer, MobiHeader.read(buffer), 2);
+        assertEquals(text.length, randomAccessText.length());
+        final int[] offsets = {text.length - 60, 0, 90, 4190, 7196, 7200, text.length / 2};
+        for (int offset : offsets) {
+            assertArrayEquals(Arrays.copyOfRange(text, offset, Math.min(offset + 200, text.length)),
+                    randomAccessText.read(offset, 200));
+        }
+        assertEquals(-1, randomAccessText.read(text.length, new byte[10], 0, 10));
+    }
+}
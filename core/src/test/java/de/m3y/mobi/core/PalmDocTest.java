@@ -0,0 +1,195 @@
+package de.m3y.mobi.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PalmDocTest {
+
+    @Test
+    public void testDecompress() {
+        final byte[] compressed = new byte[]{
+                'a', 'b',
+                (byte) 0x80, 0x11, // Back reference, distance 2 and length 4
+                (byte) 0xE8, // Space and 'h'
+                0x02, (byte) 0xC3, (byte) 0xA9 // Two literal bytes
+        };
+        final byte[] out = new byte[4096];
+        final int length = PalmDoc.decompress(ByteBuffer.wrap(compressed), 0, compressed.length, out, 0, 4096);
+        assertEquals("ababab hé", new String(out, 0, length, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDecompressExceedsMaxLength() {
+        final byte[] compressed = "abcdef".getBytes(StandardCharsets.US_ASCII);
+        try {
+            PalmDoc.decompress(ByteBuffer.wrap(compressed), 0, compressed.length, new byte[16], 0, 4);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ex) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testTrailingEntriesSize() {
+        // Data, multibyte overlap of two bytes, TBS entry of two bytes
+        final byte[] record = new byte[]{'a', 'b', (byte) 0x82, (byte) 0xAC, 0x02, 0x11, (byte) 0x82};
+        assertEquals(5, TextRecords.getTrailingEntriesSize(ByteBuffer.wrap(record), 0, record.length, 3));
+        assertEquals(2, TextRecords.getTrailingEntriesSize(ByteBuffer.wrap(record), 0, record.length, 2));
+        assertEquals(0, TextRecords.getTrailingEntriesSize(ByteBuffer.wrap(record), 0, record.length, 0));
+    }
+
+    @Test
+    public void testReadTextRecords() throws IOException, URISyntaxException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(MobiHeaderTest.getFixturePath()));
+        final MobiHeader header = MobiHeader.read(buffer);
+        final TextRecords textRecords = new TextRecords(buffer, header);
+        assertEquals(336, textRecords.getRecordCount());
+
+        final byte[] out = new byte[textRecords.getMaxRecordLength()];
+        long textLength = 0;
+        for (int i = 0; i < textRecords.getRecordCount(); i++) {
+            textLength += textRecords.read(i, out, 0);
+        }
+        assertEquals(header.textLength, textLength);
+
+        final ByteBuffer outBuffer = ByteBuffer.allocateDirect(textRecords.getMaxRecordLength());
+        assertEquals(4096, textRecords.read(0, outBuffer));
+        assertEquals(4096, outBuffer.position());
+    }
+
+    @Test
+    public void testReadKnownText() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; builder.length() < 10000; i++) {
+            builder.append("<p>Paragraph ").append(i).append(": Grüße aus der Git Geschichte.</p>\n");
+        }
+        final byte[] text = builder.toString().getBytes(StandardCharsets.UTF_8);
+        final byte[][] records = PalmDoc.compressRecords(text, 4096, Runnable::run);
+        final ByteBuffer buffer = createBook(2, 4096, text.length, records);
+
+        final TextRecords textRecords = new TextRecords(buffer, MobiHeader.read(buffer));
+        assertEquals(3, textRecords.getRecordCount());
+        final byte[] out = new byte[4096];
+        assertEquals(4096, textRecords.read(0, out, 0));
+        assertArrayEquals(Arrays.copyOf(text, 4096), out);
+        assertArrayEquals(text, textRecords.readAll());
+    }
+
+    @Test
+    public void testReadAllParallel() throws IOException, URISyntaxException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(MobiHeaderTest.getFixturePath()));
+        final MobiHeader header = MobiHeader.read(buffer);
+        final TextRecords textRecords = new TextRecords(buffer, header);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final byte[] out = new byte[textRecords.getMaxRecordLength()];
+        for (int i = 0; i < textRecords.getRecordCount(); i++) {
+            expected.write(out, 0, textRecords.read(i, out, 0));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(expected.toByteArray(), textRecords.readAll(pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testCompressRoundTrip() {
+        final Random random = new Random(42);
+        final byte[] binary = new byte[4096];
+        random.nextBytes(binary);
+        final byte[] text = ("The quick brown fox jumps over the lazy dog. Der Bär äße gern Äpfel.\u0001 "
+                + "The quick brown fox jumps over the lazy dog again.").getBytes(StandardCharsets.UTF_8);
+        final byte[] repeated = new byte[4096];
+        for (int i = 0; i < repeated.length; i++) {
+            repeated[i] = (byte) "abcabcabd ".charAt(i % 10);
+        }
+
+        final PalmDoc.Compressor compressor = new PalmDoc.Compressor();
+        for (byte[] data : new byte[][]{new byte[0], binary, text, repeated}) {
+            final byte[] compressed = compressor.compress(data, 0, data.length);
+            assertTrue(compressed.length <= PalmDoc.maxCompressedLength(data.length));
+            final byte[] out = new byte[data.length];
+            assertEquals(data.length, PalmDoc.decompress(ByteBuffer.wrap(compressed), 0, compressed.length,
+                    out, 0, data.length));
+            assertArrayEquals(data, out);
+        }
+        assertTrue(compressor.compress(repeated, 0, repeated.length).length < repeated.length / 4);
+    }
+
+    @Test
+    public void testCompressRecords() throws IOException, URISyntaxException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(MobiHeaderTest.getFixturePath()));
+        final MobiHeader header = MobiHeader.read(buffer);
+        final byte[] text = new TextRecords(buffer, header).readAll();
+        final int recordSize = header.recordSize;
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final byte[][] records;
+        try {
+            records = PalmDoc.compressRecords(text, recordSize, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals((text.length + recordSize - 1) / recordSize, records.length);
+
+        final ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        final byte[] out = new byte[recordSize];
+        for (byte[] record : records) {
+            decompressed.write(out, 0, PalmDoc.decompress(ByteBuffer.wrap(record), 0, record.length, out, 0,
+                    recordSize));
+        }
+        assertArrayEquals(text, decompressed.toByteArray());
+    }
+
+    /**
+     * Creates a MOBI file containing the given text records, without EXTH header.
+     */
+    static ByteBuffer createBook(int compression, int recordSize, int textLength, byte[]... textRecords) {
+        final ByteBuffer record0 = ByteBuffer.allocate(16 + 0xE8);
+        record0.putShort(0, (short) compression);
+        record0.putInt(4, textLength);
+        record0.putShort(8, (short) textRecords.length);
+        record0.putShort(10, (short) recordSize);
+        record0.put(16, (byte) 'M').put(17, (byte) 'O').put(18, (byte) 'B').put(19, (byte) 'I');
+        record0.putInt(20, 0xE8);
+        record0.putInt(24, 2);
+        record0.putInt(28, 65001);
+        record0.putInt(0xF4, Index.NO_INDEX);
+
+        final int numRecords = 1 + textRecords.length;
+        int length = PalmDatabase.Header.getLength(numRecords) + record0.capacity();
+        for (byte[] record : textRecords) {
+            length += record.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort(76, (short) numRecords);
+        int offset = PalmDatabase.Header.getLength(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            final byte[] record = i == 0 ? record0.array() : textRecords[i - 1];
+            buffer.putInt(PalmDatabase.Header.LENGTH + i * PalmDatabase.Record.LENGTH, offset);
+            ((Buffer) buffer).position(offset);
+            buffer.put(record);
+            offset += record.length;
+        }
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+}
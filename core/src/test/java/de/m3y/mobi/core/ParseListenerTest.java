@@ -0,0 +1,106 @@
+package de.m3y.mobi.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParseListenerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class RecordingListener implements ParseListener {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void palmDatabaseHeaderRead(int bytes, int numRecords, long elapsedNanos) {
+            calls.add("pdb:" + bytes + ":" + numRecords);
+        }
+
+        @Override
+        public void mobiHeaderRead(int bytes, int recordIndex, long elapsedNanos) {
+            calls.add("mobi:" + bytes + ":" + recordIndex);
+        }
+
+        @Override
+        public void exthHeaderRead(int bytes, int recordCount, long elapsedNanos) {
+            calls.add("exth:" + bytes + ":" + recordCount);
+        }
+    }
+
+    @Test
+    public void testListener() throws IOException, URISyntaxException {
+        final RecordingListener listener = new RecordingListener();
+        final ParseOptions options = new ParseOptions().listener(listener);
+        final MobiHeader header = MobiHeader.read(MobiHeaderTest.getFixturePath(), options);
+        final List<String> expected = new ArrayList<>();
+        expected.add("pdb:" + PalmDatabase.Header.getLength(header.palmDatabaseHeader.numRecords) + ":"
+                + header.palmDatabaseHeader.numRecords);
+        expected.add("mobi:" + (16 + header.headerLength) + ":0");
+        expected.add("exth:" + header.exthHeader.headerLength + ":" + header.exthHeader.recordCount);
+        assertEquals(expected, listener.calls);
+
+        listener.calls.clear();
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(MobiHeaderTest.getFixturePath())))) {
+            MobiHeader.read(is, options);
+        }
+        assertEquals(expected, listener.calls);
+    }
+
+    @Test
+    public void testFlightRecorderEvents() throws IOException, URISyntaxException {
+        final Path dump = folder.getRoot().toPath().resolve("parse.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("de.m3y.mobi.PalmDatabaseHeaderRead");
+            recording.enable("de.m3y.mobi.MobiHeaderRead");
+            recording.enable("de.m3y.mobi.ExthHeaderRead");
+            recording.start();
+            MobiHeader.read(MobiHeaderTest.getFixturePath());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        final List<String> names = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            names.add(event.getEventType().getName());
+            assertTrue(event.getEventType().getName(), event.getDuration().toNanos() > 0);
+        }
+        assertTrue(names.contains("de.m3y.mobi.PalmDatabaseHeaderRead"));
+        assertTrue(names.contains("de.m3y.mobi.MobiHeaderRead"));
+        assertTrue(names.contains("de.m3y.mobi.ExthHeaderRead"));
+    }
+
+    @Test
+    public void testFlightRecorderThreshold() throws IOException, URISyntaxException {
+        final Path dump = folder.getRoot().toPath().resolve("threshold.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("de.m3y.mobi.PalmDatabaseHeaderRead").withThreshold(Duration.ofHours(1));
+            recording.start();
+            MobiHeader.read(MobiHeaderTest.getFixturePath());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            assertNotEquals("de.m3y.mobi.PalmDatabaseHeaderRead", event.getEventType().getName());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package de.m3y.mobi.standalone;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import de.m3y.mobi.core.MobiHeader;
+import de.m3y.mobi.core.PalmDatabase;
+
+/**
+ * Writes MOBI headers using a streaming JSON generator, without reflection.
+ * <p>
+ * Writes the same properties as a reflective ObjectMapper, omitting null values.
+ */
+public class MobiHeaderJsonWriter {
+
+    private MobiHeaderJsonWriter() {
+        // Not instantiable
+    }
+
+    /**
+     * Writes the MOBI header as JSON object.
+     *
+     * @param g      the generator.
+     * @param header the MOBI header.
+     * @throws IOException on error.
+     */
+    public static void write(JsonGenerator g, MobiHeader header) throws IOException {
+        g.writeStartObject();
+        if (null != header.palmDatabaseHeader) {
+            g.writeFieldName("palmDatabaseHeader");
+            write(g, header.palmDatabaseHeader);
+        }
+        g.writeNumberField("headerRecordIndex", header.headerRecordIndex);
+        writeString(g, "compression", header.compression);
+        g.writeNumberField("textLength", header.textLength);
+        g.writeNumberField("recordCount", header.recordCount);
+        g.writeNumberField("recordSize", header.recordSize);
+        g.writeNumberField("encryptionType", header.encryptionType);
+        writeString(g, "identifier", header.identifier);
+        g.writeNumberField("headerLength", header.headerLength);
+        writeString(g, "mobiType", header.mobiType);
+        writeString(g, "encoding", null != header.encoding ? header.encoding.name() : null);
+        g.writeNumberField("uniqueId", header.uniqueId);
+        g.writeNumberField("fileVersion", header.fileVersion);
+        g.writeNumberField("ortographicIndex", header.ortographicIndex);
+        g.writeNumberField("inflectionIndex", header.inflectionIndex);
+        g.writeNumberField("indexNames", header.indexNames);
+        g.writeNumberField("indexKeys", header.indexKeys);
+        if (null != header.extraIndex) {
+            g.writeFieldName("extraIndex");
+            g.writeArray(header.extraIndex, 0, header.extraIndex.length);
+        }
+        g.writeNumberField("firstNonBookIndex", header.firstNonBookIndex);
+        g.writeNumberField("fullNameOffset", header.fullNameOffset);
+        g.writeNumberField("fullNameLength", header.fullNameLength);
+        g.writeNumberField("locale", header.locale);
+        g.writeNumberField("inputLanguage", header.inputLanguage);
+        g.writeNumberField("outputLanguage", header.outputLanguage);
+        g.writeNumberField("minVersion", header.minVersion);
+        g.writeNumberField("firstImageIndex", header.firstImageIndex);
+        g.writeNumberField("huffmanRecordOffset", header.huffmanRecordOffset);
+        g.writeNumberField("huffmanRecordCount", header.huffmanRecordCount);
+        g.writeNumberField("huffmanTableOffset", header.huffmanTableOffset);
+        g.writeNumberField("huffmanTableLength", header.huffmanTableLength);
+        g.writeBooleanField("hasExth", header.hasExth);
+        g.writeNumberField("extraRecordDataFlags", header.extraRecordDataFlags);
+        g.writeNumberField("ncxIndex", header.ncxIndex);
+        if (null != header.exthHeader) {
+            g.writeFieldName("exthHeader");
+            write(g, header.exthHeader);
+        }
+        g.writeEndObject();
+    }
+
+    private static void write(JsonGenerator g, PalmDatabase.Header header) throws IOException {
+        g.writeStartObject();
+        writeString(g, "name", header.name);
+        g.writeNumberField("attributes", header.attributes);
+        g.writeNumberField("version", header.version);
+        writeDate(g, "creationDate", header.creationDate);
+        writeDate(g, "modificationDate", header.modificationDate);
+        g.writeNumberField("nextRecordListId", header.nextRecordListId);
+        g.writeNumberField("modificationNumber", header.modificationNumber);
+        writeDate(g, "lastBackupDate", header.lastBackupDate);
+        g.writeNumberField("appInfoId", header.appInfoId);
+        g.writeNumberField("sortInfoId", header.sortInfoId);
+        writeString(g, "type", header.type);
+        writeString(g, "creator", header.creator);
+        g.writeNumberField("uniqueIdSeed", header.uniqueIdSeed);
+        g.writeNumberField("numRecords", header.numRecords);
+        if (null != header.records) {
+            g.writeArrayFieldStart("records");
+            for (PalmDatabase.Record record : header.records) {
+                writeRecord(g, record.dataOffset, record.attributes, record.uniqueID);
+            }
+            g.writeEndArray();
+        } else if (null != header.recordTable) {
+            final PalmDatabase.RecordTable table = header.recordTable;
+            g.writeArrayFieldStart("records");
+            for (int i = 0; i < table.size(); i++) {
+                writeRecord(g, table.dataOffset(i), table.attributes(i), table.uniqueID(i));
+            }
+            g.writeEndArray();
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeRecord(JsonGenerator g, int dataOffset, byte attributes, int uniqueID)
+            throws IOException {
+        g.writeStartObject();
+        g.writeNumberField("dataOffset", dataOffset);
+        g.writeNumberField("attributes", attributes);
+        g.writeNumberField("uniqueID", uniqueID);
+        g.writeEndObject();
+    }
+
+    private static void write(JsonGenerator g, MobiHeader.Exth.Header header) throws IOException {
+        g.writeStartObject();
+        writeString(g, "identifier", header.identifier);
+        g.writeNumberField("headerLength", header.headerLength);
+        g.writeNumberField("recordCount", header.recordCount);
+        g.writeArrayFieldStart("records");
+        for (int i = 0; i < header.recordCount; i++) {
+            write(g, header.getRecord(i));
+        }
+        g.writeEndArray();
+        g.writeEndObject();
+    }
+
+    /**
+     * Writes an EXTH record as JSON object.
+     *
+     * @param g      the generator.
+     * @param record the EXTH record.
+     * @throws IOException on error.
+     */
+    public static void write(JsonGenerator g, MobiHeader.Exth.Record record) throws IOException {
+        g.writeStartObject();
+        g.writeNumberField("typeCode", record.typeCode);
+        writeString(g, "typeLabel", record.typeLabel);
+        g.writeNumberField("length", record.length);
+        writeString(g, "data", record.data);
+        g.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator g, String name, Object value) throws IOException {
+        if (null != value) {
+            g.writeStringField(name, value.toString());
+        }
+    }
+
+    private static void writeDate(JsonGenerator g, String name, Date value) throws IOException {
+        if (null != value) {
+            g.writeNumberField(name, value.getTime());
+        }
+    }
+}
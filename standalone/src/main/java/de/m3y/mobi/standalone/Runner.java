@@ -3,43 +3,76 @@ package de.m3y.mobi.standalone;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.json.JsonWriteFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import de.m3y.mobi.core.MobiHeader;
+import de.m3y.mobi.core.MobiHeaderCache;
+import de.m3y.mobi.core.MobiScanner;
+import de.m3y.mobi.core.ParseOptions;
 
 /**
  * CLI runner.
  */
 public class Runner {
+    private static final int CACHE_MAX_ENTRIES = 10000;
 
     public static void main(String[] args) throws IOException {
-        if (args.length >= 1) {
-            String filename;
-            boolean full = false;
-            if (args.length == 2) {
-                full = "-full".equals(args[0]);
-                filename = args[1];
+        boolean full = false;
+        boolean scan = false;
+        boolean ndjson = false;
+        int threads = 0;
+        String cacheFile = null;
+        final List<String> filenames = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-full".equals(args[i])) {
+                full = true;
+            } else if ("-scan".equals(args[i])) {
+                scan = true;
+            } else if ("-ndjson".equals(args[i])) {
+                ndjson = true;
+            } else if ("-cache".equals(args[i]) && i + 1 < args.length) {
+                cacheFile = args[++i];
+            } else if ("-threads".equals(args[i])) {
+                threads = i + 1 < args.length ? parseThreads(args[++i]) : -1;
+                if (threads <= 0) {
+                    System.err.println("Expect positive number of threads for -threads");
+                    usage();
+                    return;
+                }
             } else {
-                filename = args[0];
+                filenames.add(args[i]);
             }
+        }
 
-            try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
-                    Files.newInputStream(Paths.get(filename))))) {
+        if (filenames.size() == 1 || (ndjson && !filenames.isEmpty())) {
+            final ParseOptions options = new ParseOptions().skipRecords(!full);
+            if (scan || ndjson) {
+                try (JsonGenerator g = createGenerator()) {
+                    if (scan) {
+                        scan(g, options, filenames.get(0), threads, cacheFile);
+                    } else {
+                        for (String filename : filenames) {
+                            writeLine(g, filename, read(filename, options), null);
+                        }
+                    }
+                }
+            } else {
                 ObjectMapper mapper = new ObjectMapper()
                         .enable(SerializationFeature.INDENT_OUTPUT)
                         .enable(SerializationFeature.WRAP_ROOT_VALUE)
                         .setSerializationInclusion(JsonInclude.Include.NON_NULL)
                         .configure(JsonWriteFeature.ESCAPE_NON_ASCII.mappedFeature(), true)
                         .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
-                final MobiHeader header = MobiHeader.read(is);
-                if (!full) {
-                    header.palmDatabaseHeader.records = null;
-                }
-
-                mapper.writeValue(System.out, header);
+                mapper.writeValue(System.out, read(filenames.get(0), options));
             }
         } else {
             System.err.println("Expect MOBI file as argument");
@@ -47,9 +80,83 @@ public class Runner {
         }
     }
 
+    private static int parseThreads(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static MobiHeader read(String filename, ParseOptions options) throws IOException {
+        try (final DataInputStream is = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(Paths.get(filename))))) {
+            return MobiHeader.read(is, options);
+        }
+    }
+
+    /**
+     * Creates a generator for compact, newline delimited JSON on stdout.
+     */
+    private static JsonGenerator createGenerator() throws IOException {
+        final JsonFactory factory = JsonFactory.builder()
+                .enable(JsonWriteFeature.ESCAPE_NON_ASCII)
+                .build();
+        final JsonGenerator g = factory.createGenerator(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), JsonEncoding.UTF8);
+        g.setRootValueSeparator(null);
+        return g;
+    }
+
+    /**
+     * Writes one JSON line, containing either the header or the error.
+     */
+    private static void writeLine(JsonGenerator g, String path, MobiHeader header, Exception error)
+            throws IOException {
+        g.writeStartObject();
+        g.writeStringField("path", path);
+        if (null != error) {
+            g.writeStringField("error", error.toString());
+        } else {
+            g.writeFieldName("MobiHeader");
+            MobiHeaderJsonWriter.write(g, header);
+        }
+        g.writeEndObject();
+        g.writeRaw('\n');
+    }
+
+    /**
+     * Scans a directory tree, printing one JSON line per file.
+     */
+    private static void scan(JsonGenerator g, ParseOptions options, String directory, int threads,
+                             String cacheFile) throws IOException {
+        final Consumer<MobiScanner.Result> consumer = result -> {
+            try {
+                synchronized (g) {
+                    writeLine(g, result.path.toString(), result.header, result.error);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        };
+        if (null != cacheFile) {
+            try (MobiHeaderCache cache = MobiHeaderCache.open(Paths.get(cacheFile), options, CACHE_MAX_ENTRIES)) {
+                new MobiScanner(cache, threads).scan(Paths.get(directory), consumer);
+            }
+        } else {
+            new MobiScanner(options, threads).scan(Paths.get(directory), consumer);
+        }
+    }
+
     private static void usage() {
         System.out.println("\nUsage: java -jar libmobi-standalone.jar [-full] mobi-file");
+        System.out.println("       java -jar libmobi-standalone.jar -ndjson [-full] mobi-file...");
+        System.out.println("       java -jar libmobi-standalone.jar -scan [-threads n] [-cache file] [-full] directory");
         System.out.println("\nOptions:");
-        System.out.println("       -full : includes Palm database records");
+        System.out.println("       -full       : includes Palm database records");
+        System.out.println("       -ndjson     : prints one compact JSON line per file");
+        System.out.println("       -scan       : reads all MOBI files in directory tree, printing one JSON line per file");
+        System.out.println("       -cache file : caches headers of unchanged files in cache file when scanning");
+        System.out.println("       -threads n  : number of files read in parallel when scanning (default: number of CPUs)");
     }
 }